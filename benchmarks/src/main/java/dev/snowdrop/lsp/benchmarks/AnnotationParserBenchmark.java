@@ -0,0 +1,89 @@
+package dev.snowdrop.lsp.benchmarks;
+
+import dev.snowdrop.lsp.common.services.ast.ASTAnnotationParser;
+import dev.snowdrop.lsp.common.services.ast.SourceBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link ASTAnnotationParser} entry points over all the files of a workspace, an operation
+ * being a pass over the workspace.
+ * <p>
+ * {@code parseContent} always parses the content, while {@code parseFile} and {@code analyzeAllAnnotations}
+ * go through the AST cache, warmed by the first iteration: their difference is the gain of the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class AnnotationParserBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int fileCount;
+
+    private List<Path> files;
+    private List<ByteBuffer> contents;
+    private byte[] annotationPattern;
+
+    @Setup(Level.Trial)
+    public void generateWorkspace() throws IOException {
+        files = BenchmarkWorkspace.generate(fileCount);
+        contents = new ArrayList<>(fileCount);
+        for (Path file : files) {
+            contents.add(SourceBytes.read(file));
+        }
+        annotationPattern = ASTAnnotationParser.annotationPattern(BenchmarkWorkspace.ANNOTATION);
+    }
+
+    @Benchmark
+    public int quickAnnotationCheck() {
+        int candidates = 0;
+        for (ByteBuffer content : contents) {
+            if (ASTAnnotationParser.quickAnnotationCheck(content, annotationPattern)) {
+                candidates++;
+            }
+        }
+        return candidates;
+    }
+
+    @Benchmark
+    public void parseContent(Blackhole blackhole) {
+        for (int i = 0; i < fileCount; i++) {
+            blackhole.consume(ASTAnnotationParser.parseJavaFileForAnnotations(files.get(i), contents.get(i), BenchmarkWorkspace.ANNOTATION));
+        }
+    }
+
+    @Benchmark
+    public void parseFile(Blackhole blackhole) throws IOException {
+        for (Path file : files) {
+            blackhole.consume(ASTAnnotationParser.parseJavaFileForAnnotations(file, BenchmarkWorkspace.ANNOTATION));
+        }
+    }
+
+    @Benchmark
+    public void analyzeAllAnnotations(Blackhole blackhole) throws IOException {
+        for (Path file : files) {
+            blackhole.consume(ASTAnnotationParser.analyzeAllAnnotations(file));
+        }
+    }
+}
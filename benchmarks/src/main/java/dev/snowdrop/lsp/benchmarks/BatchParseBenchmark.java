@@ -0,0 +1,72 @@
+package dev.snowdrop.lsp.benchmarks;
+
+import dev.snowdrop.lsp.common.services.ast.ASTAnnotationParser;
+import dev.snowdrop.lsp.common.services.ast.BatchAnnotationParser;
+import dev.snowdrop.lsp.common.services.ast.SourceBytes;
+import dev.snowdrop.lsp.common.services.scan.ScanOptions;
+import dev.snowdrop.lsp.common.services.scan.ScanPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of parsing the candidate files of a scan in batches through {@link BatchAnnotationParser}, compared
+ * with parsing them one at a time, an operation being a pass over the candidates of the workspace.
+ * <p>
+ * Both read the files on every pass: the loop parses the content it reads, as the file variant of
+ * {@link ASTAnnotationParser} would be served by the AST cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class BatchParseBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int fileCount;
+
+    @Param({"16", "64", "256"})
+    public int batchSize;
+
+    private List<Path> candidates;
+    private BatchAnnotationParser batchParser;
+
+    @Setup(Level.Trial)
+    public void findCandidates() throws IOException {
+        List<Path> files = BenchmarkWorkspace.generate(fileCount);
+        byte[] annotationPattern = ASTAnnotationParser.annotationPattern(BenchmarkWorkspace.ANNOTATION);
+        candidates = new ScanPipeline(ScanOptions.defaults()).findCandidates(BenchmarkWorkspace.rootOf(files),
+            source -> ASTAnnotationParser.quickAnnotationCheck(source.getContent(), annotationPattern));
+        batchParser = new BatchAnnotationParser(batchSize);
+    }
+
+    @Benchmark
+    public void parsePerFile(Blackhole blackhole) throws IOException {
+        for (Path candidate : candidates) {
+            blackhole.consume(ASTAnnotationParser.parseJavaFileForAnnotations(candidate, SourceBytes.read(candidate),
+                BenchmarkWorkspace.ANNOTATION));
+        }
+    }
+
+    @Benchmark
+    public Object parseBatch() {
+        return batchParser.parseJavaFilesForAnnotations(candidates, BenchmarkWorkspace.ANNOTATION);
+    }
+}
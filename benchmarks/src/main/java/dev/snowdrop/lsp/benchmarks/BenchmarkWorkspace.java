@@ -0,0 +1,74 @@
+package dev.snowdrop.lsp.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated workspaces searched by the benchmarks: half of the classes carry the searched annotation on
+ * the class and on some fields, the other half only mention it in a comment, so that the quick check
+ * lets some files through which are then rejected by the parser.
+ */
+public final class BenchmarkWorkspace {
+    public static final String ANNOTATION = "MySearchableAnnotation";
+
+    private BenchmarkWorkspace() {
+    }
+
+    /**
+     * Generate a workspace in a new temporary directory.
+     *
+     * @param fileCount The number of Java files
+     * @return The generated files, in the order of their index
+     * @throws IOException If the files cannot be written
+     */
+    public static List<Path> generate(int fileCount) throws IOException {
+        Path root = Files.createTempDirectory("lsp-jmh-");
+        Path packageDir = Files.createDirectories(root.resolve("src/main/java/bench"));
+        List<Path> files = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            Path file = packageDir.resolve("Bench" + i + ".java");
+            Files.writeString(file, sampleClass(i));
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Returns the root of the workspace of the generated files.
+     */
+    public static Path rootOf(List<Path> files) {
+        return files.get(0).getParent().getParent().getParent().getParent().getParent();
+    }
+
+    private static String sampleClass(int index) {
+        boolean annotated = index % 2 == 0;
+        StringBuilder source = new StringBuilder();
+        source.append("package bench;\n\n");
+        if (annotated) {
+            source.append("@").append(ANNOTATION).append("(\"class\")\n");
+        } else {
+            source.append("// Not annotated with @").append(ANNOTATION).append("\n");
+        }
+        source.append("public class Bench").append(index).append(" {\n");
+        for (int field = 0; field < 10; field++) {
+            if (annotated && field % 3 == 0) {
+                source.append("    @").append(ANNOTATION).append("\n");
+            }
+            source.append("    private String field").append(field).append(";\n");
+        }
+        for (int method = 0; method < 10; method++) {
+            source.append("    public int method").append(method).append("(int value) {\n")
+                .append("        int total = 0;\n")
+                .append("        for (int i = 0; i < value; i++) {\n")
+                .append("            total += i * ").append(method).append(";\n")
+                .append("        }\n")
+                .append("        return total;\n")
+                .append("    }\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package dev.snowdrop.lsp.benchmarks;
+
+import dev.snowdrop.lsp.common.utils.ExecutionMode;
+import dev.snowdrop.lsp.common.utils.LSUtils;
+import dev.snowdrop.lsp.common.utils.SnowdropLS;
+import dev.snowdrop.lsp.common.utils.Transport;
+import org.eclipse.lsp4j.ExecuteCommandParams;
+import org.eclipse.lsp4j.services.LanguageServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a {@code java/findAnnotatedClasses} command sent by the client of {@link LSUtils#launchServer()}:
+ * serialization of the request, search of the workspace index, serialization of the locations and their
+ * transport back to the client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class FindAnnotatedClassesBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int fileCount;
+
+    @Param({"RING_BUFFER", "PIPED"})
+    public Transport transport;
+
+    private SnowdropLS snowdropLS;
+    private LanguageServer server;
+    private ExecuteCommandParams params;
+
+    @Setup(Level.Trial)
+    public void launchServer() throws Exception {
+        List<Path> files = BenchmarkWorkspace.generate(fileCount);
+        snowdropLS = LSUtils.launchServer(ExecutionMode.fromSystemProperty(), transport);
+        server = snowdropLS.getRemoteServer();
+        LSUtils.initializeLanguageServer(server, BenchmarkWorkspace.rootOf(files));
+        params = new ExecuteCommandParams("java/findAnnotatedClasses", List.of(BenchmarkWorkspace.ANNOTATION));
+        // Wait for the workspace index, built in the background after the initialization
+        server.getWorkspaceService().executeCommand(params).get(5, TimeUnit.MINUTES);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownServer() {
+        snowdropLS.shutdown();
+    }
+
+    @Benchmark
+    public Object findAnnotatedClasses() throws Exception {
+        return server.getWorkspaceService().executeCommand(params).get(1, TimeUnit.MINUTES);
+    }
+}
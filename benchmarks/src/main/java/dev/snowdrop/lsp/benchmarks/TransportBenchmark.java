@@ -0,0 +1,66 @@
+package dev.snowdrop.lsp.benchmarks;
+
+import dev.snowdrop.lsp.common.services.JavaWorkspaceService;
+import dev.snowdrop.lsp.common.utils.ExecutionMode;
+import dev.snowdrop.lsp.common.utils.LSUtils;
+import dev.snowdrop.lsp.common.utils.SnowdropLS;
+import dev.snowdrop.lsp.common.utils.Transport;
+import org.eclipse.lsp4j.ExecuteCommandParams;
+import org.eclipse.lsp4j.services.LanguageServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of the cheapest request of the server, the {@code snowdrop/metrics} command, sent by the client
+ * of {@link LSUtils#launchServer()}: the measures are dominated by the transport and the dispatching of the
+ * messages rather than by a search, whose round trip is measured by {@link FindAnnotatedClassesBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class TransportBenchmark {
+
+    @Param({"RING_BUFFER", "PIPED"})
+    public Transport transport;
+
+    private SnowdropLS snowdropLS;
+    private LanguageServer server;
+    private ExecuteCommandParams params;
+
+    @Setup(Level.Trial)
+    public void launchServer() throws Exception {
+        List<Path> files = BenchmarkWorkspace.generate(1);
+        snowdropLS = LSUtils.launchServer(ExecutionMode.fromSystemProperty(), transport);
+        server = snowdropLS.getRemoteServer();
+        LSUtils.initializeLanguageServer(server, BenchmarkWorkspace.rootOf(files));
+        params = new ExecuteCommandParams(JavaWorkspaceService.METRICS_COMMAND, List.of());
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownServer() {
+        snowdropLS.shutdown();
+    }
+
+    @Benchmark
+    public Object ping() throws Exception {
+        return server.getWorkspaceService().executeCommand(params).get(1, TimeUnit.MINUTES);
+    }
+}
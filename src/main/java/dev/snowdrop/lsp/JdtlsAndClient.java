@@ -2,33 +2,38 @@ package dev.snowdrop.lsp;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import dev.snowdrop.lsp.common.jdtls.JdtlsPool;
+import dev.snowdrop.lsp.common.jdtls.JdtlsPoolOptions;
+import dev.snowdrop.lsp.common.jdtls.JdtlsProcessFactory;
+import dev.snowdrop.lsp.common.services.LsSearchService;
+import dev.snowdrop.lsp.common.services.RuleBatchRunner;
+import dev.snowdrop.lsp.common.utils.ExecutionMode;
 import dev.snowdrop.lsp.common.utils.LSClient;
+import dev.snowdrop.lsp.common.utils.MessageMetrics;
+import dev.snowdrop.lsp.model.RuleQuery;
+import dev.snowdrop.lsp.model.RuleResult;
 import io.konveyor.tackle.core.internal.RuleEntryParams;
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.jsonrpc.Launcher;
-import org.eclipse.lsp4j.launch.LSPLauncher;
 import org.eclipse.lsp4j.services.LanguageServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
-import static dev.snowdrop.lsp.common.services.LsSearchService.executeCmd;
 import static dev.snowdrop.lsp.common.utils.FileUtils.getExampleDir;
 import static java.lang.String.format;
 
 public class JdtlsAndClient {
 
     private static final Logger logger = LoggerFactory.getLogger(JdtlsAndClient.class);
-    private static final long TIMEOUT = 5000;
     private static String JDT_LS_PATH;
     private static String JDT_WKS;
 
@@ -46,39 +51,21 @@ public class JdtlsAndClient {
         Path wksDir = Paths.get(JDT_WKS);
         logger.info("Created workspace project directory: {}", wksDir);
 
-        String os = System.getProperty("os.name").toLowerCase();
-        Path configPath = os.contains("win") ? Paths.get(JDT_LS_PATH, "config_win") :
-            os.contains("mac") ? Paths.get(JDT_LS_PATH, "config_mac_arm") :
-                Paths.get(JDT_LS_PATH, "config_linux");
-
-        String launcherJar = Objects
-            .requireNonNull(
-                new File(JDT_LS_PATH, "plugins")
-                    .listFiles((dir, name) -> name.startsWith("org.eclipse.equinox.launcher_")))[0].getName();
-
-        ProcessBuilder pb = new ProcessBuilder(
-            "java",
-            "-Declipse.application=org.eclipse.jdt.ls.core.id1",
-            "-Dosgi.bundles.defaultStartLevel=4",
-            "-Dosgi.checkConfiguration=true",
-            "-Dosgi.sharedConfiguration.area.readOnly=true",
-            "-Dosgi.configuration.cascaded=true",
-            "-Declipse.product=org.eclipse.jdt.ls.core.product",
-            "-Dlog.level=ALL",
-            "-Djdt.ls.debug=true",
-            "-noverify",
-            "-Xmx1G",
-            "--add-modules=ALL-SYSTEM",
-            "--add-opens", "java.base/java.util=ALL-UNNAMED",
-            "--add-opens", "java.base/java.lang=ALL-UNNAMED",
-            "-jar", Paths.get(JDT_LS_PATH, "plugins", launcherJar).toString(),
-            "-configuration", configPath.toString(),
-            "-data", wksDir.resolve(".jdt_workspace").toString()
-        );
-        pb.redirectErrorStream(true);
+        // With -DJDT_POOL_SIZE=n, the rules are run by a pool of n jdt-ls instances instead of a single one
+        String rulesFile = System.getProperty("RULES_FILE");
+        int poolSize = Integer.getInteger("JDT_POOL_SIZE", 0);
+        if (rulesFile != null && poolSize > 0) {
+            runPooledBatch(wksDir, RuleBatchRunner.loadQueries(Paths.get(rulesFile)), poolSize);
+            return;
+        }
+
+        // With -DJDT_REUSE_DATA=true, the workspace folder of the project is kept between runs, and so its index
+        Path dataDir = Boolean.getBoolean("JDT_REUSE_DATA")
+            ? JdtlsProcessFactory.projectDataDir(wksDir.resolve(".jdt_workspaces"), getExampleDir())
+            : wksDir.resolve(".jdt_workspace");
 
         try {
-            process = pb.start();
+            process = new JdtlsProcessFactory(Paths.get(JDT_LS_PATH)).start(dataDir);
             logger.info("Process id: {}", process.info());
             logger.info("jdt ls started");
         } catch (IOException exception) {
@@ -88,29 +75,88 @@ public class JdtlsAndClient {
 
         Launcher<LanguageServer> launcher;
         ExecutorService executor;
+        // Per-method latencies and payloads of the messages exchanged with the server, logged on exit
+        MessageMetrics metrics = new MessageMetrics();
 
         logger.info("Connecting to the JDT Language Server ...");
 
-        executor = Executors.newSingleThreadExecutor();
+        // A single thread reads the messages of the server, or a virtual thread with -Dsnowdrop.executionMode=virtual
+        executor = ExecutionMode.fromSystemProperty().newExecutor("jdtls-client", 1);
         LSClient client = new LSClient();
 
-        launcher = LSPLauncher.createClientLauncher(
-            client,
-            process.getInputStream(),
-            process.getOutputStream(),
-            executor,
-            (writer) -> writer // No-op, we don't want to wrap the writer
-        );
+        launcher = new MessageMetrics.LauncherBuilder<LanguageServer>(metrics)
+            .setLocalService(client)
+            .setRemoteInterface(LanguageServer.class)
+            .setInput(process.getInputStream())
+            .setOutput(process.getOutputStream())
+            .setExecutorService(executor)
+            .create();
 
-        launcher.startListening();
+        Future<Void> listening = launcher.startListening();
 
         LanguageServer remoteProxy = launcher.getRemoteProxy();
 
+        // With -DJDT_READY_TIMEOUT=<ms>, the time given to a cold jdt ls to initialize, and after which the
+        // queries are sent even if it was not reported ready
+        long readyTimeout = Long.getLong("JDT_READY_TIMEOUT", LSClient.DEFAULT_READY_TIMEOUT_MILLIS);
+        InitializeParams p = initializeParams();
+        CompletableFuture<InitializeResult> future = remoteProxy.initialize(p);
+        future.get(readyTimeout, TimeUnit.MILLISECONDS);
+
+        InitializedParams initialized = new InitializedParams();
+        remoteProxy.initialized(initialized);
+
+        // The queries are sent once the project is imported and indexed, as reported by the server
+        long initializedAt = System.nanoTime();
+        logger.info("CLIENT: Waiting for jdt ls to import and index the project ...");
+        CompletableFuture<Void> ready = client.whenReady(readyTimeout)
+            .thenRun(() -> logger.info("CLIENT: jdt ls ready after {} ms", (System.nanoTime() - initializedAt) / 1_000_000));
+
+        // Batch mode: the queries of a rules file are pipelined over the connection, then the server is stopped
+        if (rulesFile != null) {
+            int maxInFlight = Integer.getInteger("RULES_IN_FLIGHT", LsSearchService.DEFAULT_MAX_IN_FLIGHT);
+            List<RuleQuery> queries = RuleBatchRunner.loadQueries(Paths.get(rulesFile));
+            RuleBatchRunner batchRunner = new RuleBatchRunner(new LsSearchService(remoteProxy, maxInFlight),
+                Optional.ofNullable(System.getProperty("LS_CMD")).orElse(RuleBatchRunner.RULE_ENTRY_COMMAND));
+            ready
+                .thenCompose(done -> {
+                    long start = System.nanoTime();
+                    return batchRunner.run(queries).thenAccept(results -> {
+                        results.values().forEach(result -> logger.info("CLIENT: Rule {}", result));
+                        logger.info("CLIENT: Ran {} queries of {} rules in {} ms, {} in flight at most.", queries.size(),
+                            results.size(), (System.nanoTime() - start) / 1_000_000, maxInFlight);
+                    });
+                })
+                .thenCompose(done -> remoteProxy.shutdown())
+                .thenRun(remoteProxy::exit)
+                .exceptionally(
+                    t -> {
+                        t.printStackTrace();
+                        return null;
+                    }
+                );
+        } else {
+            runCommand(remoteProxy, ready);
+        }
+
+        // Keep the client running until the server closes the connection
+        try {
+            listening.get();
+        } finally {
+            ExecutionMode.shutdown(executor);
+            metrics.snapshot().forEach((method, stats) -> logger.info("CLIENT: {}: {}", method, stats));
+        }
+    }
+
+    /**
+     * Returns the parameters of the {@code initialize} request, loading the java-analyzer-bundle.
+     */
+    private static InitializeParams initializeParams() {
         // TODO : To review in order to pass some missing parameters from a JSON file
         InitializeParams p = new InitializeParams();
         p.setProcessId((int) ProcessHandle.current().pid());
         p.setRootUri(getExampleDir().toUri().toString());
-        p.setCapabilities(new ClientCapabilities());
+        p.setCapabilities(LSClient.readinessCapabilities());
 
         String bundlePath = String.format("[\"%s\"]",Paths.get(JDT_LS_PATH,"java-analyzer-bundle","java-analyzer-bundle.core","target","java-analyzer-bundle.core-1.0.0-SNAPSHOT.jar"));
         logger.info("bundle path is {}", bundlePath);
@@ -123,13 +169,57 @@ public class JdtlsAndClient {
 
         Object initializationOptions = new Gson().fromJson(json, JsonObject.class);
         p.setInitializationOptions(initializationOptions);
+        return p;
+    }
 
-        CompletableFuture<InitializeResult> future = remoteProxy.initialize(p);
-        future.get(TIMEOUT, TimeUnit.MILLISECONDS).toString();
+    /**
+     * Run the queries of a rules file on a pool of jdt-ls instances, the rules being spread over the instances
+     * and every rule running on a single one, so that its symbols are aggregated as in a single connection.
+     */
+    private static void runPooledBatch(Path wksDir, List<RuleQuery> queries, int poolSize) throws Exception {
+        int maxInFlight = Integer.getInteger("RULES_IN_FLIGHT", LsSearchService.DEFAULT_MAX_IN_FLIGHT);
+        String command = Optional.ofNullable(System.getProperty("LS_CMD")).orElse(RuleBatchRunner.RULE_ENTRY_COMMAND);
+        List<List<RuleQuery>> partitions = new ArrayList<>();
+        for (int i = 0; i < poolSize; i++) {
+            partitions.add(new ArrayList<>());
+        }
+        Map<String, Integer> partitionOfRule = new HashMap<>();
+        for (RuleQuery query : queries) {
+            int partition = partitionOfRule.computeIfAbsent(query.getRuleId(), ruleId -> partitionOfRule.size() % poolSize);
+            partitions.get(partition).add(query);
+        }
 
-        InitializedParams initialized = new InitializedParams();
-        remoteProxy.initialized(initialized);
+        JdtlsPoolOptions options = new JdtlsPoolOptions().setSize(poolSize);
+        JdtlsPool.InstanceFactory factory = JdtlsPool.jdtls(new JdtlsProcessFactory(Paths.get(JDT_LS_PATH)),
+            wksDir.resolve(".jdt_pool"), JdtlsAndClient::initializeParams, options.getStartTimeoutMillis());
+        try (JdtlsPool pool = new JdtlsPool(options, factory)) {
+            logger.info("CLIENT: Starting {} jdt ls instances ...", poolSize);
+            pool.start().get();
+            long start = System.nanoTime();
+            List<CompletableFuture<Map<String, RuleResult>>> runs = new ArrayList<>();
+            for (List<RuleQuery> partition : partitions) {
+                if (partition.isEmpty()) {
+                    continue;
+                }
+                JdtlsPool.Lease lease = pool.lease(options.getStartTimeoutMillis(), TimeUnit.MILLISECONDS);
+                runs.add(new RuleBatchRunner(new LsSearchService(lease.getServer(), maxInFlight), command).run(partition)
+                    .whenComplete((results, error) -> lease.close()));
+            }
+            int ruleCount = 0;
+            for (CompletableFuture<Map<String, RuleResult>> run : runs) {
+                Map<String, RuleResult> results = run.get();
+                results.values().forEach(result -> logger.info("CLIENT: Rule {}", result));
+                ruleCount += results.size();
+            }
+            logger.info("CLIENT: Ran {} queries of {} rules on {} instances in {} ms, {} in flight at most per instance.",
+                queries.size(), ruleCount, runs.size(), (System.nanoTime() - start) / 1_000_000, maxInFlight);
+        }
+    }
 
+    /**
+     * Send the command of the LS_CMD property, with the query of the MySearchableAnnotation annotation as argument.
+     */
+    private static void runCommand(LanguageServer remoteProxy, CompletableFuture<Void> ready) {
         // Send by example the command java.project.getAll to the jdt-ls as it supports it
         String cmd = Optional.ofNullable(System.getProperty("LS_CMD")).orElse("java.project.getAll");
         logger.info("CLIENT: Sending the command '{}' ...", cmd);
@@ -164,10 +254,10 @@ public class JdtlsAndClient {
 
         List<Object> cmdArguments = List.of(paramsMap);
 
-        future
-            .thenRunAsync(() -> {
-                executeCmd(cmd, cmdArguments, remoteProxy);
-            })
+        LsSearchService searchService = new LsSearchService(remoteProxy);
+        ready
+            .thenCompose(done -> searchService.executeCommand(cmd, cmdArguments))
+            .thenAccept(symbols -> LsSearchService.logSymbols(cmd, symbols))
             .exceptionally(
                 t -> {
                     t.printStackTrace();
@@ -2,23 +2,91 @@ package dev.snowdrop.lsp.common;
 
 import dev.snowdrop.lsp.common.services.JavaTextDocumentService;
 import dev.snowdrop.lsp.common.services.JavaWorkspaceService;
+import dev.snowdrop.lsp.common.services.document.DocumentStore;
+import dev.snowdrop.lsp.common.utils.ExecutionMode;
+import dev.snowdrop.lsp.common.utils.MessageMetrics;
 import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 
-public class SnowdropLanguageServer implements LanguageServer {
+public class SnowdropLanguageServer implements LanguageServer, LanguageClientAware {
     private static final Logger logger = LoggerFactory.getLogger(SnowdropLanguageServer.class);
+    private static final String WATCHED_FILES_METHOD = "workspace/didChangeWatchedFiles";
+    private static final String WATCHED_FILES_REGISTRATION_ID = "snowdrop-java-files";
+    private static final String JAVA_FILES_GLOB = "**/*.java";
 
     private final JavaTextDocumentService textDocumentService;
     private final JavaWorkspaceService workspaceService;
+    private final List<ExecutorService> executors = new CopyOnWriteArrayList<>();
+    private LanguageClient client;
+    private boolean watchFilesRegistration;
     private int exitCode = 0;
 
     public SnowdropLanguageServer() {
-        this.textDocumentService = new JavaTextDocumentService();
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param computeThreads The number of searches run concurrently. The scans started by a search have their
+     *                       own threads, sized by the scan options, so this bounds the searches in progress and
+     *                       not the parallelism of a scan.
+     */
+    public SnowdropLanguageServer(int computeThreads) {
+        // CPU-heavy requests run on their own executor, keeping the thread dispatching the messages free.
+        // It is a bounded pool whatever the execution mode, as virtual threads do not bound CPU work
+        ExecutorService computeExecutor = ExecutionMode.POOL.newExecutor("snowdrop-compute", computeThreads);
+        addExecutor(computeExecutor);
+
+        DocumentStore documentStore = new DocumentStore();
+        this.textDocumentService = new JavaTextDocumentService(documentStore);
+        this.textDocumentService.setComputeExecutor(computeExecutor);
         this.workspaceService = new JavaWorkspaceService();
+        this.workspaceService.setDocumentStore(documentStore);
+        this.workspaceService.setComputeExecutor(computeExecutor);
+        // The indexes are only ever updated by a single thread, which applies the changes in order
+        setIndexExecutor(ExecutionMode.POOL.newExecutor("snowdrop-indexer", 1));
+    }
+
+    /**
+     * Set the executor building the workspace indexes and applying their updates, shut down on exit.
+     * The executor it replaces is shut down once its queued tasks have run.
+     */
+    public void setIndexExecutor(ExecutorService indexExecutor) {
+        ExecutorService replaced = this.workspaceService.getIndexExecutor();
+        executors.remove(replaced);
+        replaced.shutdown();
+        addExecutor(indexExecutor);
+        this.workspaceService.setIndexExecutor(indexExecutor);
+    }
+
+    /**
+     * Register an executor running the server, such as the one of its launcher, to be shut down on exit.
+     */
+    public void addExecutor(ExecutorService executor) {
+        executors.add(executor);
+    }
+
+    /**
+     * Set the metrics of the messages of the launcher running the server, reported by the snowdrop/metrics command.
+     */
+    public void setMessageMetrics(MessageMetrics messageMetrics) {
+        this.workspaceService.setMessageMetrics(messageMetrics);
+    }
+
+    /**
+     * Connect the client of the launcher, which receives the progress of the searches.
+     */
+    @Override
+    public void connect(LanguageClient client) {
+        this.client = client;
+        this.workspaceService.setClient(client);
     }
 
     public void setWorkSpaceRoot(String workSpaceRoot) {
@@ -29,18 +97,24 @@ public class SnowdropLanguageServer implements LanguageServer {
     public CompletableFuture<InitializeResult> initialize(InitializeParams params) {
         logger.info("SERVER: Initializing Java Language Server...");
 
+        watchFilesRegistration = supportsWatchFilesRegistration(params.getCapabilities());
+
         String projectRoot = params.getRootUri();
         if (projectRoot != null) {
             textDocumentService.setWorkspaceRoot(projectRoot);
             workspaceService.setWorkspaceRoot(projectRoot);
+            workspaceService.buildWorkspaceIndex();
         }
 
         ServerCapabilities capabilities = new ServerCapabilities();
-        capabilities.setTextDocumentSync(TextDocumentSyncKind.Full);
+        capabilities.setTextDocumentSync(TextDocumentSyncKind.Incremental);
 
         ExecuteCommandOptions executeCommandOptions = new ExecuteCommandOptions();
         executeCommandOptions.getCommands().add("java/findAnnotatedClasses");
+        executeCommandOptions.getCommands().add(JavaWorkspaceService.METRICS_COMMAND);
         capabilities.setExecuteCommandProvider(executeCommandOptions);
+        capabilities.setWorkspaceSymbolProvider(true);
+        capabilities.setDocumentSymbolProvider(true);
 
         logger.info("SERVER: Initialization complete.");
         return CompletableFuture.completedFuture(new InitializeResult(capabilities));
@@ -49,6 +123,33 @@ public class SnowdropLanguageServer implements LanguageServer {
     @Override
     public void initialized(InitializedParams params) {
         logger.info("SERVER: Client has been initialized.");
+        registerFileWatcher();
+    }
+
+    private static boolean supportsWatchFilesRegistration(ClientCapabilities capabilities) {
+        if (capabilities == null || capabilities.getWorkspace() == null) {
+            return false;
+        }
+        DidChangeWatchedFilesCapabilities watchedFiles = capabilities.getWorkspace().getDidChangeWatchedFiles();
+        return watchedFiles != null && Boolean.TRUE.equals(watchedFiles.getDynamicRegistration());
+    }
+
+    /**
+     * Ask the client to watch the Java files of the workspace, whose changes keep the indexes up to date.
+     * A client not supporting the dynamic registration of the watcher must be configured to watch them.
+     */
+    private void registerFileWatcher() {
+        if (client == null || !watchFilesRegistration) {
+            logger.info("SERVER: The client does not register file watchers, the indexes follow the changes it sends.");
+            return;
+        }
+        DidChangeWatchedFilesRegistrationOptions options = new DidChangeWatchedFilesRegistrationOptions(
+            List.of(new FileSystemWatcher(Either.forLeft(JAVA_FILES_GLOB))));
+        Registration registration = new Registration(WATCHED_FILES_REGISTRATION_ID, WATCHED_FILES_METHOD, options);
+        client.registerCapability(new RegistrationParams(List.of(registration))).exceptionally(e -> {
+            logger.error("SERVER: Failed to register the watcher of the Java files", e);
+            return null;
+        });
     }
 
     @Override
@@ -61,7 +162,15 @@ public class SnowdropLanguageServer implements LanguageServer {
     @Override
     public void exit() {
         logger.info("SERVER: Exit requested.");
-        System.exit(exitCode);
+        // The notification runs on a launcher thread, so the executors are stopped from another thread,
+        // letting the responses being sent complete before the JVM stops
+        Thread exitThread = new Thread(() -> {
+            for (ExecutorService executor : executors) {
+                ExecutionMode.shutdown(executor);
+            }
+            System.exit(exitCode);
+        }, "snowdrop-exit");
+        exitThread.start();
     }
 
     @Override
@@ -0,0 +1,190 @@
+package dev.snowdrop.lsp.common.jdtls;
+
+import dev.snowdrop.lsp.common.utils.ExecutionMode;
+import dev.snowdrop.lsp.common.utils.LSClient;
+import org.eclipse.lsp4j.InitializeParams;
+import org.eclipse.lsp4j.InitializedParams;
+import org.eclipse.lsp4j.WorkspaceSymbolParams;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.launch.LSPLauncher;
+import org.eclipse.lsp4j.services.LanguageServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An initialized language server of a {@link JdtlsPool}, with the count of the jobs it ran and the memory
+ * of its process.
+ */
+public class JdtlsInstance {
+    private static final Logger logger = LoggerFactory.getLogger(JdtlsInstance.class);
+
+    // Matches no symbol, so that the health check only costs a round trip to the server
+    private static final String HEALTH_CHECK_QUERY = "__snowdrop_health_check__";
+
+    private final int id;
+    private final LanguageServer server;
+    private final ProcessHandle process;
+    private final AutoCloseable onClose;
+    private final long initialMemoryKb;
+    private int useCount;
+
+    /**
+     * @param id The number of the instance in its pool
+     * @param server The initialized server
+     * @param process The process of the server, or null when it runs in this JVM
+     * @param onClose Stops the server, once it has been shut down
+     */
+    public JdtlsInstance(int id, LanguageServer server, ProcessHandle process, AutoCloseable onClose) {
+        this.id = id;
+        this.server = server;
+        this.process = process;
+        this.onClose = onClose;
+        this.initialMemoryKb = getResidentMemoryKb();
+    }
+
+    /**
+     * Connect to a jdt-ls process through its standard streams and initialize it, waiting for the import and
+     * the indexing of the project which make the first request of a new process so slow.
+     *
+     * @param params The parameters of the {@code initialize} request, such as the root of the project. Without
+     *               capabilities, it gets the ones under which jdt-ls reports its progress
+     * @param timeoutMillis The time given to the server to initialize and become ready
+     */
+    public static JdtlsInstance connect(int id, Process process, InitializeParams params, long timeoutMillis) throws Exception {
+        // A single thread reads the messages of the server, or a virtual thread with -Dsnowdrop.executionMode=virtual
+        ExecutorService executor = ExecutionMode.fromSystemProperty().newExecutor("jdtls-pool-" + id, 1);
+        LSClient client = new LSClient();
+        Launcher<LanguageServer> launcher = new LSPLauncher.Builder<LanguageServer>()
+            .setLocalService(client)
+            .setRemoteInterface(LanguageServer.class)
+            .setInput(process.getInputStream())
+            .setOutput(process.getOutputStream())
+            .setExecutorService(executor)
+            .create();
+        Future<Void> listening = launcher.startListening();
+        LanguageServer server = launcher.getRemoteProxy();
+
+        AutoCloseable onClose = () -> {
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly();
+            }
+            listening.cancel(true);
+            ExecutionMode.shutdown(executor);
+        };
+        try {
+            if (params.getCapabilities() == null) {
+                params.setCapabilities(LSClient.readinessCapabilities());
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            server.initialize(params).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            server.initialized(new InitializedParams());
+            // The instance is only leased once the project is imported and indexed, or its start timeout is over
+            client.whenReady(Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))).get();
+        } catch (Exception e) {
+            process.destroyForcibly();
+            onClose.close();
+            throw e;
+        }
+        return new JdtlsInstance(id, server, process.toHandle(), onClose);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public LanguageServer getServer() {
+        return server;
+    }
+
+    /**
+     * Returns the number of jobs the instance was leased to.
+     */
+    public synchronized int getUseCount() {
+        return useCount;
+    }
+
+    synchronized void used() {
+        useCount++;
+    }
+
+    /**
+     * Returns the growth of the resident memory of the process since it was initialized, 0 when it is unknown.
+     */
+    public long getMemoryGrowthKb() {
+        long memoryKb = getResidentMemoryKb();
+        return memoryKb < 0 || initialMemoryKb < 0 ? 0 : memoryKb - initialMemoryKb;
+    }
+
+    /**
+     * Returns the resident memory of the process, read from {@code /proc} on Linux, or -1 when it is unknown.
+     */
+    public long getResidentMemoryKb() {
+        if (process == null) {
+            return -1;
+        }
+        Path status = Path.of("/proc", String.valueOf(process.pid()), "status");
+        try {
+            List<String> lines = Files.readAllLines(status);
+            for (String line : lines) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring("VmRSS:".length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux, or the process has exited
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if the process is alive and the server answers a request within the given time.
+     */
+    public boolean isHealthy(long timeoutMillis) {
+        if (process != null && !process.isAlive()) {
+            return false;
+        }
+        try {
+            server.getWorkspaceService().symbol(new WorkspaceSymbolParams(HEALTH_CHECK_QUERY)).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (Exception e) {
+            logger.warn("jdt ls instance {} failed its health check: {}", id, e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Shut the server down and make its process exit, forcibly if it does not exit in time.
+     */
+    public void close(long timeoutMillis) {
+        try {
+            server.shutdown().get(timeoutMillis, TimeUnit.MILLISECONDS);
+            // A server running in this JVM would stop it on exit, so it is only stopped by its close action
+            if (process != null) {
+                server.exit();
+            }
+        } catch (Exception e) {
+            logger.warn("jdt ls instance {} did not shut down: {}", id, e.toString());
+            if (process != null) {
+                process.destroyForcibly();
+            }
+        }
+        try {
+            onClose.close();
+        } catch (Exception e) {
+            logger.warn("Failed to stop the jdt ls instance {}", id, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "jdt ls instance " + id + (process != null ? " (process " + process.pid() + ")" : "");
+    }
+}
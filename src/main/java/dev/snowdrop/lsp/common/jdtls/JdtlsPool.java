@@ -0,0 +1,256 @@
+package dev.snowdrop.lsp.common.jdtls;
+
+import dev.snowdrop.lsp.common.utils.ExecutionMode;
+import org.eclipse.lsp4j.InitializeParams;
+import org.eclipse.lsp4j.services.LanguageServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Pool of initialized language servers leased to analysis jobs, so that a job does not pay for the start of a
+ * JVM, the OSGi container and the import of the project before its first query.
+ * <p>
+ * The pool keeps a fixed number of instances, one per slot. An instance is checked before being leased, and
+ * replaced once it has run the maximum number of jobs or its memory has grown too much, as jdt-ls keeps caches
+ * and indexes of everything it was asked about. A replacement is started in the background from the same slot,
+ * which for jdt-ls reuses the workspace folder and its index.
+ * <p>
+ * An instance failing to start is started again after a growing delay. A slot whose instance failed all its
+ * attempts is given up and its failure recorded, so that a job waiting for an instance fails with that cause
+ * as soon as no slot is left, instead of waiting for its timeout.
+ */
+public class JdtlsPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(JdtlsPool.class);
+
+    /**
+     * Start and initialize the instance of a slot.
+     */
+    @FunctionalInterface
+    public interface InstanceFactory {
+        JdtlsInstance create(int slot) throws Exception;
+    }
+
+    private final JdtlsPoolOptions options;
+    private final InstanceFactory factory;
+    // How often a job waiting for an instance checks whether the slots were all given up
+    private static final long LEASE_POLL_MILLIS = 100;
+
+    private final BlockingQueue<JdtlsInstance> idleInstances = new LinkedBlockingQueue<>();
+    // The failure of the slots given up, by slot
+    private final Map<Integer, Exception> failedSlots = new ConcurrentHashMap<>();
+    private final ExecutorService starter;
+    private volatile boolean closed;
+
+    public JdtlsPool(JdtlsPoolOptions options, InstanceFactory factory) {
+        if (options.getSize() < 1) {
+            throw new IllegalArgumentException("The pool size must be at least 1, got " + options.getSize());
+        }
+        this.options = options;
+        this.factory = factory;
+        this.starter = ExecutionMode.POOL.newExecutor("jdtls-pool-starter", options.getSize());
+    }
+
+    /**
+     * Returns a factory of jdt-ls processes, the one of slot {@code n} using the workspace folder
+     * {@code instance-n} of the given folder.
+     *
+     * @param params Supplies the parameters of the {@code initialize} request of every new instance
+     */
+    public static InstanceFactory jdtls(JdtlsProcessFactory processFactory, Path dataRoot, Supplier<InitializeParams> params,
+                                        long startTimeoutMillis) {
+        return slot -> {
+            Path dataDir = Files.createDirectories(dataRoot.resolve("instance-" + slot));
+            return JdtlsInstance.connect(slot, processFactory.start(dataDir), params.get(), startTimeoutMillis);
+        };
+    }
+
+    /**
+     * Start the instances of all the slots in parallel.
+     *
+     * @return A future completing once they are all initialized, or failing with the error of the first
+     *         instance which could not start
+     */
+    public CompletableFuture<Void> start() {
+        List<CompletableFuture<Void>> started = new ArrayList<>();
+        for (int slot = 0; slot < options.getSize(); slot++) {
+            int instanceSlot = slot;
+            started.add(CompletableFuture.runAsync(() -> startInstance(instanceSlot), starter));
+        }
+        return CompletableFuture.allOf(started.toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Lease an idle and healthy instance, waiting for one to be released or started if there is none.
+     *
+     * @throws TimeoutException If no instance became available in time, caused by the failure of a slot given up
+     *         if there is one
+     * @throws IllegalStateException If the pool is closed, or all its slots were given up
+     */
+    public Lease lease(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("The jdt ls pool is closed");
+            }
+            long remaining = deadline - System.nanoTime();
+            JdtlsInstance instance = idleInstances.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(LEASE_POLL_MILLIS)),
+                TimeUnit.NANOSECONDS);
+            if (instance == null) {
+                Exception failure = failedSlots.values().stream().findFirst().orElse(null);
+                if (failedSlots.size() >= options.getSize()) {
+                    throw new IllegalStateException("No jdt ls instance can be started", failure);
+                }
+                if (deadline - System.nanoTime() <= 0) {
+                    TimeoutException timeoutException = new TimeoutException("No jdt ls instance available after " + unit.toMillis(timeout) + " ms");
+                    timeoutException.initCause(failure);
+                    throw timeoutException;
+                }
+                continue;
+            }
+            if (instance.isHealthy(options.getHealthCheckTimeoutMillis())) {
+                instance.used();
+                return new Lease(instance);
+            }
+            logger.warn("Replacing the unhealthy {}", instance);
+            replace(instance);
+        }
+    }
+
+    /**
+     * Returns the failure of the slots given up after their instance failed to start, by slot.
+     */
+    public Map<Integer, Exception> getFailedSlots() {
+        return Map.copyOf(failedSlots);
+    }
+
+    /**
+     * Returns the number of instances initialized and not leased.
+     */
+    public int getIdleCount() {
+        return idleInstances.size();
+    }
+
+    private void release(JdtlsInstance instance) {
+        if (closed) {
+            instance.close(options.getStartTimeoutMillis());
+            return;
+        }
+        int maxUses = options.getMaxUses();
+        long maxGrowthKb = options.getMaxMemoryGrowthMb() * 1024;
+        if (maxUses > 0 && instance.getUseCount() >= maxUses) {
+            logger.info("Recycling the {} after {} jobs", instance, instance.getUseCount());
+            replace(instance);
+        } else if (maxGrowthKb > 0 && instance.getMemoryGrowthKb() > maxGrowthKb) {
+            logger.info("Recycling the {} after a memory growth of {} MB", instance, instance.getMemoryGrowthKb() / 1024);
+            replace(instance);
+        } else {
+            idleInstances.add(instance);
+        }
+    }
+
+    /**
+     * Stop an instance and start the one replacing it in the background, once the old one has released the
+     * resources of the slot.
+     */
+    private void replace(JdtlsInstance instance) {
+        starter.execute(() -> {
+            instance.close(options.getStartTimeoutMillis());
+            try {
+                startInstance(instance.getId());
+            } catch (IllegalStateException e) {
+                // Logged and recorded as the failure of the slot, which the jobs waiting for an instance get
+            }
+        });
+    }
+
+    private void startInstance(int slot) {
+        long retryDelayMillis = options.getStartRetryDelayMillis();
+        for (int attempt = 1; ; attempt++) {
+            if (closed) {
+                return;
+            }
+            JdtlsInstance instance;
+            try {
+                instance = factory.create(slot);
+            } catch (Exception e) {
+                if (attempt >= options.getMaxStartAttempts()) {
+                    logger.error("Giving up the slot {} after {} failed starts of its jdt ls instance", slot, attempt, e);
+                    failedSlots.put(slot, e);
+                    throw new IllegalStateException("Failed to start the jdt ls instance of slot " + slot, e);
+                }
+                logger.warn("Failed to start the jdt ls instance of slot {}, retrying in {} ms", slot, retryDelayMillis, e);
+                try {
+                    Thread.sleep(retryDelayMillis);
+                } catch (InterruptedException interrupted) {
+                    // The pool is closing
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                retryDelayMillis *= 2;
+                continue;
+            }
+            if (closed) {
+                instance.close(options.getStartTimeoutMillis());
+                return;
+            }
+            logger.info("Started the {}", instance);
+            idleInstances.add(instance);
+            return;
+        }
+    }
+
+    /**
+     * Stop the idle instances, the leased ones being stopped when they are released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        JdtlsInstance instance;
+        while ((instance = idleInstances.poll()) != null) {
+            instance.close(options.getStartTimeoutMillis());
+        }
+        ExecutionMode.shutdown(starter);
+    }
+
+    /**
+     * An instance leased to a job, returned to the pool when the lease is closed.
+     */
+    public class Lease implements AutoCloseable {
+        private final JdtlsInstance instance;
+        private boolean released;
+
+        private Lease(JdtlsInstance instance) {
+            this.instance = instance;
+        }
+
+        public LanguageServer getServer() {
+            return instance.getServer();
+        }
+
+        public JdtlsInstance getInstance() {
+            return instance;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                release(instance);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package dev.snowdrop.lsp.common.jdtls;
+
+/**
+ * Sizing and recycling of a {@link JdtlsPool}.
+ */
+public class JdtlsPoolOptions {
+    private int size = 2;
+    private int maxUses = 50;
+    private long maxMemoryGrowthMb = 512;
+    private long healthCheckTimeoutMillis = 5_000;
+    private long startTimeoutMillis = 120_000;
+    private int maxStartAttempts = 3;
+    private long startRetryDelayMillis = 1_000;
+
+    public JdtlsPoolOptions() {
+    }
+
+    /**
+     * Returns the number of instances kept initialized, leased or idle.
+     */
+    public int getSize() { return size; }
+    public JdtlsPoolOptions setSize(int size) { this.size = size; return this; }
+
+    /**
+     * Returns the number of jobs an instance runs before being replaced, 0 to never recycle it on its use count.
+     */
+    public int getMaxUses() { return maxUses; }
+    public JdtlsPoolOptions setMaxUses(int maxUses) { this.maxUses = maxUses; return this; }
+
+    /**
+     * Returns the growth of the resident memory of an instance since it was initialized, beyond which it is
+     * replaced once its job completes, 0 to never recycle it on its memory.
+     */
+    public long getMaxMemoryGrowthMb() { return maxMemoryGrowthMb; }
+    public JdtlsPoolOptions setMaxMemoryGrowthMb(long maxMemoryGrowthMb) { this.maxMemoryGrowthMb = maxMemoryGrowthMb; return this; }
+
+    /**
+     * Returns the time given to an instance to answer the request checking its health before it is leased.
+     */
+    public long getHealthCheckTimeoutMillis() { return healthCheckTimeoutMillis; }
+    public JdtlsPoolOptions setHealthCheckTimeoutMillis(long healthCheckTimeoutMillis) { this.healthCheckTimeoutMillis = healthCheckTimeoutMillis; return this; }
+
+    /**
+     * Returns the time given to an instance to start, initialize and import the project, or to shut down.
+     */
+    public long getStartTimeoutMillis() { return startTimeoutMillis; }
+    public JdtlsPoolOptions setStartTimeoutMillis(long startTimeoutMillis) { this.startTimeoutMillis = startTimeoutMillis; return this; }
+
+    /**
+     * Returns the number of times the instance of a slot is started before the slot is given up.
+     */
+    public int getMaxStartAttempts() { return maxStartAttempts; }
+    public JdtlsPoolOptions setMaxStartAttempts(int maxStartAttempts) { this.maxStartAttempts = maxStartAttempts; return this; }
+
+    /**
+     * Returns the delay before the second attempt to start an instance, doubled after every failed attempt.
+     */
+    public long getStartRetryDelayMillis() { return startRetryDelayMillis; }
+    public JdtlsPoolOptions setStartRetryDelayMillis(long startRetryDelayMillis) { this.startRetryDelayMillis = startRetryDelayMillis; return this; }
+}
@@ -0,0 +1,128 @@
+package dev.snowdrop.lsp.common.jdtls;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Command line of a jdt-ls process, started from the folder of a jdt-ls distribution.
+ * <p>
+ * Every process needs its own {@code -data} folder, as jdt-ls locks its workspace. Keeping the folder of a
+ * project between runs, see {@link #projectDataDir(Path, Path)}, saves the import and indexing of the project.
+ */
+public class JdtlsProcessFactory {
+    private static final Logger logger = LoggerFactory.getLogger(JdtlsProcessFactory.class);
+
+    private final Path jdtlsPath;
+    private final Map<String, String> systemProperties = new LinkedHashMap<>();
+    private String maxHeap = "1G";
+    private boolean inheritError;
+
+    /**
+     * @param jdtlsPath The folder of the jdt-ls distribution, holding its {@code plugins} and {@code config_*} folders
+     */
+    public JdtlsProcessFactory(Path jdtlsPath) {
+        this.jdtlsPath = jdtlsPath;
+    }
+
+    /**
+     * Returns the workspace folder of jdt-ls kept for a project between runs, named after the project folder
+     * and a hash of its path, so that the index of the project is reused instead of being built again.
+     *
+     * @param dataRoot The folder holding the workspace folders of all the projects
+     */
+    public static Path projectDataDir(Path dataRoot, Path projectRoot) {
+        Path project = projectRoot.toAbsolutePath().normalize();
+        String key = UUID.nameUUIDFromBytes(project.toString().getBytes(StandardCharsets.UTF_8)).toString().substring(0, 8);
+        Path name = project.getFileName();
+        return dataRoot.resolve((name != null ? name.toString() : "root") + "-" + key);
+    }
+
+    /**
+     * Set a system property of the jdt-ls JVM, such as {@code CLIENT_PORT} to connect it to a socket.
+     */
+    public JdtlsProcessFactory setSystemProperty(String name, String value) {
+        systemProperties.put(name, value);
+        return this;
+    }
+
+    /**
+     * Set the maximum heap of the jdt-ls JVM, 1G by default.
+     */
+    public JdtlsProcessFactory setMaxHeap(String maxHeap) {
+        this.maxHeap = maxHeap;
+        return this;
+    }
+
+    /**
+     * Send the error stream of the process to the one of this JVM, instead of merging it into its output
+     * which then can only be used when it carries no JSON-RPC messages.
+     */
+    public JdtlsProcessFactory setInheritError(boolean inheritError) {
+        this.inheritError = inheritError;
+        return this;
+    }
+
+    /**
+     * Returns the command line of a jdt-ls process using the given workspace folder.
+     */
+    public List<String> command(Path dataDir) {
+        String os = System.getProperty("os.name").toLowerCase();
+        Path configPath = os.contains("win") ? jdtlsPath.resolve("config_win") :
+            os.contains("mac") ? jdtlsPath.resolve("config_mac_arm") :
+                jdtlsPath.resolve("config_linux");
+
+        String launcherJar = Objects
+            .requireNonNull(
+                new File(jdtlsPath.toFile(), "plugins")
+                    .listFiles((dir, name) -> name.startsWith("org.eclipse.equinox.launcher_")))[0].getName();
+
+        List<String> command = new ArrayList<>(List.of(
+            "java",
+            "-Declipse.application=org.eclipse.jdt.ls.core.id1"));
+        systemProperties.forEach((name, value) -> command.add("-D" + name + "=" + value));
+        command.addAll(List.of(
+            "-Dosgi.bundles.defaultStartLevel=4",
+            "-Dosgi.checkConfiguration=true",
+            "-Dosgi.sharedConfiguration.area.readOnly=true",
+            "-Dosgi.configuration.cascaded=true",
+            "-Declipse.product=org.eclipse.jdt.ls.core.product",
+            "-Dlog.level=ALL",
+            "-Djdt.ls.debug=true",
+            "-noverify",
+            "-Xmx" + maxHeap,
+            "--add-modules=ALL-SYSTEM",
+            "--add-opens", "java.base/java.util=ALL-UNNAMED",
+            "--add-opens", "java.base/java.lang=ALL-UNNAMED",
+            "-jar", Paths.get(jdtlsPath.toString(), "plugins", launcherJar).toString(),
+            "-configuration", configPath.toString(),
+            "-data", dataDir.toString()));
+        return command;
+    }
+
+    /**
+     * Start a jdt-ls process using the given workspace folder.
+     */
+    public Process start(Path dataDir) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(command(dataDir));
+        if (inheritError) {
+            pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        } else {
+            pb.redirectErrorStream(true);
+        }
+        Process process = pb.start();
+        logger.info("jdt ls started: process {} using the workspace {}", process.pid(), dataDir);
+        return process;
+    }
+}
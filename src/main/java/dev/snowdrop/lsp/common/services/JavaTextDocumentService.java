@@ -1,39 +1,129 @@
 package dev.snowdrop.lsp.common.services;
 
+import dev.snowdrop.lsp.common.services.ast.CompilationUnitCache;
+import dev.snowdrop.lsp.common.services.ast.DocumentSymbolVisitor;
+import dev.snowdrop.lsp.common.services.ast.ParseMode;
+import dev.snowdrop.lsp.common.services.document.DocumentAstCache;
+import dev.snowdrop.lsp.common.services.document.DocumentStore;
+import dev.snowdrop.lsp.common.services.document.TextDocument;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.lsp4j.jsonrpc.CompletableFutures;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.TextDocumentService;
 import org.eclipse.lsp4j.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
+/**
+ * Keeps the documents opened by the client in a {@link DocumentStore}, applying the incremental
+ * changes sent by the client to their buffer.
+ * <p>
+ * The ASTs of the open documents are cached per version, so that the requests received between two
+ * edits, such as {@code textDocument/documentSymbol} on every pause of the typing, parse a document once.
+ */
 public class JavaTextDocumentService implements TextDocumentService {
+    private static final Logger logger = LoggerFactory.getLogger(JavaTextDocumentService.class);
+
+    private final DocumentStore documentStore;
+    private final DocumentAstCache astCache = new DocumentAstCache();
+    private Executor computeExecutor = ForkJoinPool.commonPool();
     private String workspaceRoot;
 
+    public JavaTextDocumentService() {
+        this(new DocumentStore());
+    }
+
+    public JavaTextDocumentService(DocumentStore documentStore) {
+        this.documentStore = documentStore;
+    }
+
     public void setWorkspaceRoot(String workspaceRoot) {
         this.workspaceRoot = workspaceRoot;
     }
 
+    /**
+     * Set the executor parsing the documents, keeping the thread dispatching the messages free.
+     */
+    public void setComputeExecutor(Executor computeExecutor) {
+        this.computeExecutor = computeExecutor;
+    }
+
+    public DocumentStore getDocumentStore() {
+        return documentStore;
+    }
+
     @Override
     public void didOpen(DidOpenTextDocumentParams params) {
-        // Non implémenté pour cet exemple
+        TextDocumentItem document = params.getTextDocument();
+        documentStore.open(document.getUri(), document.getVersion(), document.getText());
     }
 
     @Override
     public void didChange(DidChangeTextDocumentParams params) {
-
+        VersionedTextDocumentIdentifier document = params.getTextDocument();
+        documentStore.change(document.getUri(), document.getVersion(), params.getContentChanges());
     }
 
     @Override
     public void didClose(DidCloseTextDocumentParams params) {
+        documentStore.close(params.getTextDocument().getUri());
+        astCache.invalidate(params.getTextDocument().getUri());
     }
 
     @Override
     public void didSave(DidSaveTextDocumentParams params) {
+        // The buffer already holds the saved content
     }
 
     @Override
     public CompletableFuture<List<Either<SymbolInformation, DocumentSymbol>>> documentSymbol(DocumentSymbolParams params) {
-        return TextDocumentService.super.documentSymbol(params);
+        String uri = params.getTextDocument().getUri();
+        return CompletableFutures.computeAsync(computeExecutor, cancelChecker -> {
+            CompilationUnit compilationUnit;
+            try {
+                compilationUnit = getCompilationUnit(uri);
+            } catch (IOException e) {
+                logger.error("SERVER: Failed to read document {}", uri, e);
+                return Collections.emptyList();
+            }
+            if (compilationUnit == null) {
+                return Collections.emptyList();
+            }
+            cancelChecker.checkCanceled();
+
+            DocumentSymbolVisitor visitor = new DocumentSymbolVisitor(compilationUnit);
+            compilationUnit.accept(visitor);
+            return visitor.getSymbols().stream()
+                .map(Either::<SymbolInformation, DocumentSymbol>forRight)
+                .collect(Collectors.toList());
+        });
+    }
+
+    /**
+     * Returns the AST of an open document from the cache, or of the file of a document which is not open
+     * from the shared compilation unit cache.
+     *
+     * @return The AST, or null for a document which is neither open nor a file, such as an {@code untitled:} one
+     */
+    private CompilationUnit getCompilationUnit(String uri) throws IOException {
+        URI documentUri = URI.create(uri);
+        if (!"file".equals(documentUri.getScheme())) {
+            return null;
+        }
+        TextDocument document = documentStore.get(uri);
+        if (document != null) {
+            return astCache.get(document);
+        }
+        return CompilationUnitCache.getDefault().parse(Paths.get(documentUri), ParseMode.FULL);
     }
 }
@@ -1,11 +1,32 @@
 package dev.snowdrop.lsp.common.services;
 
-import dev.snowdrop.lsp.common.services.ast.ASTAnnotationParser;
+import dev.snowdrop.lsp.common.services.ast.AnnotationNameFilter;
+import dev.snowdrop.lsp.common.services.ast.AnnotationVisitor;
+import dev.snowdrop.lsp.common.services.ast.CompilationUnitCache;
+import dev.snowdrop.lsp.common.services.ast.ParseMode;
+import dev.snowdrop.lsp.common.services.document.DocumentStore;
+import dev.snowdrop.lsp.common.services.document.TextDocument;
+import dev.snowdrop.lsp.common.services.index.AnnotationIndex;
+import dev.snowdrop.lsp.common.services.index.WorkspaceIndex;
+import dev.snowdrop.lsp.common.services.scan.ScanOptions;
+import dev.snowdrop.lsp.common.services.scan.ScanPipeline;
+import dev.snowdrop.lsp.common.utils.ExecutionMode;
+import dev.snowdrop.lsp.common.utils.MessageMetrics;
+import dev.snowdrop.lsp.model.AnnotationSearchOptions;
+import dev.snowdrop.lsp.model.AnnotationSearchResponse;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.adapters.WorkspaceSymbolResponseAdapter;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
 import org.eclipse.lsp4j.jsonrpc.json.ResponseJsonAdapter;
+import org.eclipse.lsp4j.jsonrpc.json.adapters.EitherTypeAdapter;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
+import org.eclipse.lsp4j.services.LanguageClient;
 import org.eclipse.lsp4j.services.WorkspaceService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,30 +38,139 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * Snowdrop LS Server service
+ * <p>
+ * Searches run on a compute executor rather than on the thread dispatching the JSON-RPC messages,
+ * so that notifications and interactive requests are still processed while a workspace is scanned.
  */
 public class JavaWorkspaceService implements WorkspaceService {
     private static final Logger logger = LoggerFactory.getLogger(JavaWorkspaceService.class);
+    // Reads the options like the messages, the tokens being either strings or numbers
+    private static final Gson GSON = new GsonBuilder().registerTypeAdapterFactory(new EitherTypeAdapter.Factory()).create();
+
+    /**
+     * Command answering the metrics of the JSON-RPC messages of the server, by method.
+     */
+    public static final String METRICS_COMMAND = "snowdrop/metrics";
 
     protected String workspaceRoot;
+    private ScanOptions scanOptions = ScanOptions.defaults();
+    private DocumentStore documentStore = new DocumentStore();
+    private Executor computeExecutor = ForkJoinPool.commonPool();
+    private MessageMetrics messageMetrics;
+    private LanguageClient client;
+    // Builds the indexes then applies the changes of the files and documents in order, so that they are
+    // only ever updated by one thread, without holding a compute thread
+    private ExecutorService indexExecutor = ExecutionMode.POOL.newExecutor("snowdrop-indexer", 1);
+    // The indexes once built and brought up to date with the changes received so far, guarded by this
+    private CompletableFuture<WorkspaceIndex> workspaceIndex;
 
     public void setWorkspaceRoot(String workspaceRoot) {
         this.workspaceRoot = workspaceRoot;
         logger.info("PROXY: Workspace root set to: {}", workspaceRoot);
     }
 
+    /**
+     * Set the parallelism and queue sizes used when scanning the workspace.
+     */
+    public void setScanOptions(ScanOptions scanOptions) {
+        this.scanOptions = scanOptions;
+    }
+
+    /**
+     * Set the executor running the searches, sized for CPU-bound work.
+     */
+    public void setComputeExecutor(Executor computeExecutor) {
+        this.computeExecutor = computeExecutor;
+    }
+
+    /**
+     * Set the executor building the indexes and applying the changes of the files and documents, a single thread
+     * by default. The changes are applied one after the other whatever the executor.
+     */
+    public void setIndexExecutor(ExecutorService indexExecutor) {
+        this.indexExecutor = indexExecutor;
+    }
+
+    public ExecutorService getIndexExecutor() {
+        return indexExecutor;
+    }
+
+    /**
+     * Set the client receiving the progress of the searches.
+     */
+    public void setClient(LanguageClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Set the metrics of the messages of the launcher running the server.
+     */
+    public void setMessageMetrics(MessageMetrics messageMetrics) {
+        this.messageMetrics = messageMetrics;
+    }
+
+    /**
+     * Set the documents opened by the client, shared with the text document service.
+     * Searches read the open documents from their buffer instead of disk.
+     */
+    public void setDocumentStore(DocumentStore documentStore) {
+        this.documentStore = documentStore;
+    }
+
+    /**
+     * Start building the annotation and symbol indexes of the workspace in the background.
+     * Searches wait for the indexes to be built and are then served from them.
+     */
+    public void buildWorkspaceIndex() {
+        if (workspaceRoot == null) {
+            return;
+        }
+        Path rootPath = Paths.get(URI.create(workspaceRoot));
+        CompletableFuture<WorkspaceIndex> built = CompletableFuture.supplyAsync(() -> {
+            try {
+                return WorkspaceIndex.build(rootPath, scanOptions, documentStore);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, indexExecutor);
+        synchronized (this) {
+            workspaceIndex = built;
+        }
+    }
+
     @Override
     @JsonRequest
     @ResponseJsonAdapter(WorkspaceSymbolResponseAdapter.class)
     public CompletableFuture<Either<List<? extends SymbolInformation>, List<? extends WorkspaceSymbol>>> symbol(WorkspaceSymbolParams params) {
         String query = params.getQuery();
         logger.info("SERVER: Received 'workspace/symbol' request with query: '{}'", query);
-        return null;
+
+        // Runs once the index is built
+        return computeWithWorkspaceIndex(null, (index, stop) -> {
+            stop.cancelChecker.checkCanceled();
+            List<SymbolInformation> symbols = index == null
+                ? Collections.emptyList()
+                : index.getSymbolIndex().search(query == null ? "" : query);
+            logger.info("SERVER: Found {} symbols.", symbols.size());
+            return Either.forLeft(symbols);
+        });
     }
 
     @Override
@@ -50,6 +180,9 @@ public class JavaWorkspaceService implements WorkspaceService {
         if ("java/findAnnotatedClasses".equals(params.getCommand())) {
             return handleFindAnnotatedClassesCommand(params);
         }
+        if (METRICS_COMMAND.equals(params.getCommand())) {
+            return CompletableFuture.completedFuture(messageMetrics == null ? Collections.emptyMap() : messageMetrics.snapshot());
+        }
 
         logger.warn("SERVER: Unsupported command '{}'", params.getCommand());
         return CompletableFuture.completedFuture(null);
@@ -61,9 +194,40 @@ public class JavaWorkspaceService implements WorkspaceService {
         // Default implementation - subclasses can override
     }
 
+    /**
+     * Apply the changes of the watched files to the indexes.
+     * The notification is dispatched with the other messages, so the changes are queued behind the building of
+     * the indexes and the previous changes and applied by the indexer thread, without waiting for the indexes.
+     * The server registers the watcher of the Java files when the client supports its dynamic registration,
+     * otherwise the client must be configured to watch them.
+     */
     @Override
     public void didChangeWatchedFiles(DidChangeWatchedFilesParams params) {
-        // Default implementation - subclasses can override
+        List<FileEvent> changes = List.copyOf(params.getChanges());
+        updateWorkspaceIndex(index -> applyFileEvents(index, changes));
+    }
+
+    private void applyFileEvents(WorkspaceIndex index, List<FileEvent> changes) {
+        for (FileEvent event : changes) {
+            if (!event.getUri().endsWith(".java")) {
+                continue;
+            }
+            Path path = Paths.get(URI.create(event.getUri()));
+            try {
+                if (event.getType() == FileChangeType.Deleted) {
+                    index.remove(path);
+                    CompilationUnitCache.getDefault().invalidate(path);
+                } else if (documentStore.isOpen(path)) {
+                    // The buffer of an open document wins over the file, it is indexed from the store
+                    continue;
+                } else {
+                    index.update(path);
+                }
+            } catch (IOException | RuntimeException e) {
+                // A file failing to be indexed must not fail the updates queued after it
+                logger.error("SERVER: Failed to reindex file {}", path, e);
+            }
+        }
     }
 
     @Override
@@ -72,7 +236,12 @@ public class JavaWorkspaceService implements WorkspaceService {
     }
 
     /**
-     * Handle the java/findAnnotatedClasses command
+     * Handle the java/findAnnotatedClasses command.
+     * The first argument is either an annotation simple name, answered with the list of its locations,
+     * or a list of names, all searched in a single pass and answered with the locations keyed by name.
+     * The optional second argument is an {@link AnnotationSearchOptions} object.
+     * A cancelled search stops scanning before its next file, and a search given a timeout answers an
+     * {@link AnnotationSearchResponse} flagged as partial when its deadline stopped it.
      */
     protected CompletableFuture<Object> handleFindAnnotatedClassesCommand(ExecuteCommandParams params) {
         if (params.getArguments() == null || params.getArguments().isEmpty()) {
@@ -80,15 +249,50 @@ public class JavaWorkspaceService implements WorkspaceService {
             return CompletableFuture.completedFuture(Collections.emptyList());
         }
 
+        AnnotationSearchOptions options = new AnnotationSearchOptions();
+        if (params.getArguments().size() > 1) {
+            options = toSearchOptions(params.getArguments().get(1));
+        }
+
         Object arg = params.getArguments().get(0);
-        String annotationSimpleName;
-        if (arg instanceof com.google.gson.JsonPrimitive) {
-            annotationSimpleName = ((com.google.gson.JsonPrimitive) arg).getAsString();
-        } else {
-            annotationSimpleName = arg.toString();
+        if (arg instanceof JsonArray || arg instanceof List) {
+            List<String> annotationNames = toAnnotationNames(arg);
+            SearchProgress progress = new SearchProgress(client, params.getWorkDoneToken(), options.getPartialResultToken(),
+                annotationNames, true);
+            return findClassesWithAnnotations(annotationNames, options, progress);
         }
+        String annotationName = toAnnotationName(arg);
+        SearchProgress progress = new SearchProgress(client, params.getWorkDoneToken(), options.getPartialResultToken(),
+            List.of(annotationName), false);
+        return findClassesWithAnnotation(annotationName, options, progress);
+    }
 
-        return findClassesWithAnnotation(annotationSimpleName);
+    private static String toAnnotationName(Object arg) {
+        if (arg instanceof JsonPrimitive) {
+            return ((JsonPrimitive) arg).getAsString();
+        }
+        return arg.toString();
+    }
+
+    private static List<String> toAnnotationNames(Object arg) {
+        Iterable<?> items = arg instanceof JsonArray ? (JsonArray) arg : (List<?>) arg;
+        List<String> annotationNames = new ArrayList<>();
+        for (Object item : items) {
+            annotationNames.add(toAnnotationName(item));
+        }
+        return annotationNames;
+    }
+
+    private static AnnotationSearchOptions toSearchOptions(Object arg) {
+        if (arg instanceof AnnotationSearchOptions) {
+            return (AnnotationSearchOptions) arg;
+        }
+        JsonElement json = arg instanceof JsonElement ? (JsonElement) arg : GSON.toJsonTree(arg);
+        AnnotationSearchOptions options = GSON.fromJson(json, AnnotationSearchOptions.class);
+        if (options.getParseMode() == null) {
+            options.setParseMode(ParseMode.FULL);
+        }
+        return options;
     }
 
     /**
@@ -96,34 +300,311 @@ public class JavaWorkspaceService implements WorkspaceService {
      * This is the shared implementation that provides accurate annotation search.
      */
     protected CompletableFuture<Object> findClassesWithAnnotation(String annotationSimpleName) {
-        logger.info("SERVER: Searching for classes with annotation '@{}' in workspace: {}", annotationSimpleName, workspaceRoot);
-        List<Location> locations = new ArrayList<>();
+        return findClassesWithAnnotation(annotationSimpleName, new AnnotationSearchOptions());
+    }
+
+    /**
+     * Find classes with the specified annotation, parsing files as requested by the options.
+     */
+    protected CompletableFuture<Object> findClassesWithAnnotation(String annotationSimpleName, AnnotationSearchOptions options) {
+        return findClassesWithAnnotation(annotationSimpleName, options, SearchProgress.none(List.of(annotationSimpleName)));
+    }
+
+    /**
+     * Find classes with the specified annotation, reporting the progress and the locations found to the client.
+     */
+    protected CompletableFuture<Object> findClassesWithAnnotation(String annotationSimpleName, AnnotationSearchOptions options,
+                                                                  SearchProgress progress) {
+        return computeWithWorkspaceIndex(options.getTimeoutMillis(), (index, stop) -> {
+            Map<String, List<Location>> locationsByName = searchAnnotations(List.of(annotationSimpleName), options, progress,
+                stop, index);
+            return toResponse(locationsByName.get(annotationSimpleName), options, stop);
+        });
+    }
+
+    /**
+     * Find classes with any of the specified annotations in a single pass over the workspace.
+     *
+     * @return The locations keyed by annotation name, in the order of the given names
+     */
+    protected CompletableFuture<Object> findClassesWithAnnotations(List<String> annotationSimpleNames, AnnotationSearchOptions options) {
+        return findClassesWithAnnotations(annotationSimpleNames, options, SearchProgress.none(annotationSimpleNames));
+    }
+
+    /**
+     * Find classes with any of the specified annotations in a single pass over the workspace, reporting
+     * the progress and the locations found to the client.
+     *
+     * @return The locations keyed by annotation name, in the order of the given names
+     */
+    protected CompletableFuture<Object> findClassesWithAnnotations(List<String> annotationSimpleNames, AnnotationSearchOptions options,
+                                                                   SearchProgress progress) {
+        return computeWithWorkspaceIndex(options.getTimeoutMillis(), (index, stop) ->
+            toResponse(searchAnnotations(annotationSimpleNames, options, progress, stop, index), options, stop));
+    }
+
+    /**
+     * Returns the response of a search, wrapped with its partial flag when the request gave a timeout.
+     *
+     * @throws java.util.concurrent.CancellationException If the request was cancelled, its partial locations
+     *         being of no use to the client
+     */
+    private static Object toResponse(Object locations, AnnotationSearchOptions options, SearchStop stop) {
+        stop.cancelChecker.checkCanceled();
+        if (options.getTimeoutMillis() == null) {
+            return locations;
+        }
+        return new AnnotationSearchResponse(locations, stop.isStopped());
+    }
+
+    /**
+     * Search the workspace for several annotations, from the annotation index when it is available
+     * and otherwise with a single scan matching all the names.
+     *
+     * @return The locations keyed by annotation name, with an entry for every requested name
+     */
+    protected Map<String, List<Location>> searchAnnotations(List<String> annotationSimpleNames, AnnotationSearchOptions options) {
+        return searchAnnotations(annotationSimpleNames, options, SearchProgress.none(annotationSimpleNames));
+    }
+
+    /**
+     * Search the workspace for several annotations, reporting the progress of the scan and the locations
+     * of every file as soon as it is scanned.
+     *
+     * @return The locations keyed by annotation name, with an entry for every requested name, all empty
+     *         when the locations were sent as partial results
+     */
+    protected Map<String, List<Location>> searchAnnotations(List<String> annotationSimpleNames, AnnotationSearchOptions options,
+                                                            SearchProgress progress) {
+        return searchAnnotations(annotationSimpleNames, options, progress, () -> false);
+    }
+
+    /**
+     * Search the workspace for several annotations until the search completes or is stopped, the scan
+     * checking the stop condition before each file.
+     *
+     * @param stopRequested Returns true when the search must stop, such as when its request was cancelled
+     * @return The locations found before the search stopped, keyed by annotation name
+     */
+    protected Map<String, List<Location>> searchAnnotations(List<String> annotationSimpleNames, AnnotationSearchOptions options,
+                                                            SearchProgress progress, BooleanSupplier stopRequested) {
+        return searchAnnotations(annotationSimpleNames, options, progress, stopRequested,
+            workspaceRoot == null ? null : getWorkspaceIndex());
+    }
+
+    private Map<String, List<Location>> searchAnnotations(List<String> annotationSimpleNames, AnnotationSearchOptions options,
+                                                          SearchProgress progress, BooleanSupplier stopRequested,
+                                                          WorkspaceIndex index) {
+        progress.begin();
+        try {
+            Map<String, List<Location>> locationsByName = searchAnnotations(annotationSimpleNames, options.getParseMode(),
+                progress, stopRequested, index);
+            if (progress.isStreamingResults()) {
+                locationsByName.replaceAll((annotationSimpleName, locations) -> new ArrayList<>());
+            }
+            return locationsByName;
+        } finally {
+            progress.end();
+        }
+    }
+
+    private Map<String, List<Location>> searchAnnotations(List<String> annotationSimpleNames, ParseMode parseMode,
+                                                          SearchProgress progress, BooleanSupplier stopRequested,
+                                                          WorkspaceIndex index) {
+        logger.info("SERVER: Searching for classes with annotations {} in workspace: {} ({} parse)", annotationSimpleNames, workspaceRoot, parseMode);
+        Map<String, List<Location>> locationsByName = new LinkedHashMap<>();
+        for (String annotationSimpleName : annotationSimpleNames) {
+            locationsByName.put(annotationSimpleName, new ArrayList<>());
+        }
 
         if (workspaceRoot == null) {
-            return CompletableFuture.completedFuture(locations);
+            return locationsByName;
+        }
+
+        if (index == null && stopRequested.getAsBoolean()) {
+            // Stopped while the indexes were being built, there is nothing found so far
+            return locationsByName;
+        }
+        if (index != null) {
+            AnnotationIndex annotationIndex = index.getAnnotationIndex();
+            for (String annotationSimpleName : annotationSimpleNames) {
+                if (stopRequested.getAsBoolean()) {
+                    break;
+                }
+                List<Location> locations = annotationIndex.find(annotationSimpleName, parseMode);
+                locationsByName.put(annotationSimpleName, locations);
+                progress.onAnnotationCompleted(annotationSimpleName, locations);
+            }
+            logger.info("SERVER: Found {} locations in the annotation index.", countLocations(locationsByName));
+            return locationsByName;
         }
 
         try {
             Path rootPath = Paths.get(URI.create(workspaceRoot));
-            try (Stream<Path> paths = Files.walk(rootPath)) {
-                paths.filter(Files::isRegularFile)
-                    .filter(path -> path.toString().endsWith(".java"))
-                    .forEach(path -> {
-                        try {
-                            // Use quick check first to avoid unnecessary AST parsing
-                            if (ASTAnnotationParser.quickAnnotationCheck(path, annotationSimpleName)) {
-                                locations.addAll(ASTAnnotationParser.parseJavaFileForAnnotations(path, annotationSimpleName));
-                            }
-                        } catch (Exception e) {
-                            logger.error("SERVER: Failed to parse file {}", path, e);
-                        }
-                    });
+            // Use quick check first to avoid unnecessary AST parsing
+            AnnotationNameFilter nameFilter = new AnnotationNameFilter(annotationSimpleNames);
+            // Unchanged files are not parsed again by successive searches
+            ScanPipeline pipeline = new ScanPipeline(scanOptions, documentStore);
+            pipeline.setCompilationUnitCache(CompilationUnitCache.getDefault());
+            List<Map<String, List<Location>>> fileLocations = pipeline.scan(rootPath,
+                source -> nameFilter.mayContainAny(source.getContent()),
+                parseMode,
+                (source, compilationUnit) -> {
+                    AnnotationVisitor visitor = new AnnotationVisitor(nameFilter.getNames(), compilationUnit, source.getPath().toUri());
+                    compilationUnit.accept(visitor);
+                    return visitor.getLocations().isEmpty() ? List.of() : List.of(visitor.getLocationsByName());
+                },
+                progress,
+                stopRequested);
+            for (Map<String, List<Location>> locations : fileLocations) {
+                locations.forEach((annotationSimpleName, found) -> locationsByName.get(annotationSimpleName).addAll(found));
             }
         } catch (IOException e) {
             logger.error("SERVER: Failed to walk workspace path {}", workspaceRoot, e);
         }
 
-        logger.info("SERVER: Found {} locations.", locations.size());
-        return CompletableFuture.completedFuture(locations);
+        logger.info("SERVER: Found {} locations (AST cache: {}).", countLocations(locationsByName), CompilationUnitCache.getDefault().getStats());
+        return locationsByName;
+    }
+
+    /**
+     * Stop condition of a search, true once its request is cancelled or its deadline has passed.
+     */
+    private static class SearchStop implements BooleanSupplier {
+        private final CancelChecker cancelChecker;
+        private final long deadlineNanos;
+        private volatile boolean stopped;
+
+        SearchStop(CancelChecker cancelChecker, Long timeoutMillis) {
+            this.cancelChecker = cancelChecker;
+            this.deadlineNanos = timeoutMillis == null ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+
+        @Override
+        public boolean getAsBoolean() {
+            if (!stopped && (cancelChecker.isCanceled() || System.nanoTime() - deadlineNanos >= 0)) {
+                stopped = true;
+            }
+            return stopped;
+        }
+
+        /**
+         * Returns whether the search was stopped, which is only known once a stage has checked the condition,
+         * so a search completing just before its deadline is not reported as partial.
+         */
+        boolean isStopped() {
+            return stopped;
+        }
+    }
+
+    private static int countLocations(Map<String, List<Location>> locationsByName) {
+        return locationsByName.values().stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * Run a request once the workspace indexes are built and up to date with the documents opened, edited
+     * or closed before it, on the compute executor. No thread waits for the indexes meanwhile, and a request
+     * cancelled or expired before they are ready completes without them.
+     *
+     * @param timeoutMillis The time after which the request runs without the indexes and stops, if any
+     * @param task Runs the request with the indexes, null when they were not requested, could not be built
+     *             or the request stopped first
+     */
+    private <T> CompletableFuture<T> computeWithWorkspaceIndex(Long timeoutMillis, BiFunction<WorkspaceIndex, SearchStop, T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CancelChecker cancelChecker = () -> {
+            if (result.isCancelled()) {
+                throw new CancellationException();
+            }
+        };
+        // The deadline runs from the request, not from the moment the indexes are ready
+        SearchStop stop = new SearchStop(cancelChecker, timeoutMillis);
+        CompletableFuture<WorkspaceIndex> indexReady = getWorkspaceIndexFuture();
+        if (timeoutMillis != null) {
+            indexReady = indexReady.copy().completeOnTimeout(null, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        indexReady.whenCompleteAsync((index, error) -> {
+            if (result.isDone()) {
+                // Cancelled while waiting for the indexes
+                return;
+            }
+            if (error != null) {
+                logger.error("SERVER: Workspace index unavailable, falling back to workspace scans", error);
+                index = null;
+            }
+            try {
+                result.complete(task.apply(index, stop));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, computeExecutor);
+        return result;
+    }
+
+    /**
+     * Wait for the workspace indexes to be built, and bring them up to date with the documents
+     * opened, edited or closed since the last query.
+     *
+     * @return The indexes, or null when they were not requested or could not be built
+     */
+    protected WorkspaceIndex getWorkspaceIndex() {
+        try {
+            return getWorkspaceIndexFuture().get();
+        } catch (ExecutionException e) {
+            logger.error("SERVER: Workspace index unavailable, falling back to workspace scans", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the workspace indexes once built and brought up to date with the documents opened, edited
+     * or closed since the last query, their changes being applied by the indexer after the earlier ones.
+     */
+    private synchronized CompletableFuture<WorkspaceIndex> getWorkspaceIndexFuture() {
+        if (workspaceIndex == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Path> changedFiles = documentStore.drainChangedFiles();
+        if (!changedFiles.isEmpty()) {
+            updateWorkspaceIndex(index -> reindexChangedDocuments(index, changedFiles));
+        }
+        return workspaceIndex;
+    }
+
+    /**
+     * Apply an update to the workspace indexes on the indexer, after the build and the updates before it.
+     */
+    private synchronized void updateWorkspaceIndex(Consumer<WorkspaceIndex> update) {
+        if (workspaceIndex == null) {
+            return;
+        }
+        workspaceIndex = workspaceIndex.thenApplyAsync(index -> {
+            update.accept(index);
+            return index;
+        }, indexExecutor);
+    }
+
+    private void reindexChangedDocuments(WorkspaceIndex index, List<Path> changedFiles) {
+        for (Path path : changedFiles) {
+            if (!path.toString().endsWith(".java")) {
+                continue;
+            }
+            TextDocument document = documentStore.get(path);
+            try {
+                if (document != null) {
+                    index.update(path, document.getContent());
+                } else if (Files.isRegularFile(path)) {
+                    // A closed document is back to the content of its file
+                    index.update(path);
+                } else {
+                    index.remove(path);
+                }
+            } catch (IOException e) {
+                logger.error("SERVER: Failed to reindex file {}", path, e);
+            }
+        }
     }
 }
@@ -2,113 +2,235 @@ package dev.snowdrop.lsp.common.services;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonSyntaxException;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import dev.snowdrop.lsp.model.LSPSymbolInfo;
 import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.json.adapters.EitherTypeAdapter;
+import org.eclipse.lsp4j.jsonrpc.json.adapters.EnumTypeAdapter;
 import org.eclipse.lsp4j.services.LanguageServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Type;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
+/**
+ * Client side of the searches sent to a language server, such as jdt-ls.
+ * <p>
+ * The commands sent through an instance are capped to a number of requests in flight: the ones sent beyond it
+ * are queued, without blocking the caller, and sent as the previous requests complete. This keeps the server busy
+ * without overloading it when a client sends many commands at once.
+ */
 public class LsSearchService {
 
     private static final Logger logger = LoggerFactory.getLogger(LsSearchService.class);
+
+    /**
+     * System property which, set to {@code true}, logs the whole result of the commands and every symbol found.
+     */
+    public static final String DUMP_RESULTS_PROPERTY = "snowdrop.dumpResults";
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
+    // Shared as Gson instances are thread-safe, with the lsp4j adapters reading enums such as SymbolKind from their value
+    private static final Gson GSON = new GsonBuilder()
+        .registerTypeAdapterFactory(new EnumTypeAdapter.Factory())
+        .registerTypeAdapterFactory(new EitherTypeAdapter.Factory())
+        .create();
+    private static final Gson PRETTY_GSON = GSON.newBuilder().setPrettyPrinting().create();
+
     private final LanguageServer languageServer;
+    private final int maxInFlight;
+    // Requests waiting for one of the requests in flight to complete, guarded by this
+    private final Deque<BooleanSupplier> pendingRequests = new ArrayDeque<>();
+    private int inFlight;
+    private boolean dispatching;
 
     public LsSearchService(LanguageServer languageServer) {
+        this(languageServer, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param maxInFlight The number of requests sent to the server and not answered yet, beyond which the
+     *                    requests are queued
+     */
+    public LsSearchService(LanguageServer languageServer, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("The number of requests in flight must be at least 1, got " + maxInFlight);
+        }
         this.languageServer = languageServer;
+        this.maxInFlight = maxInFlight;
     }
 
-    public static void executeCmd(String customCmd, List<Object> arguments, LanguageServer LS) {
-        List<Object> cmdArguments = (arguments != null && !arguments.isEmpty())
-            ? arguments
-            : Collections.EMPTY_LIST;
+    /**
+     * Execute a command on the server and decode its result, see {@link #decodeSymbols(Object)}.
+     * The command is sent once fewer than the maximum number of requests are in flight. Cancelling the returned
+     * future removes a queued command, or cancels the request sent to the server.
+     *
+     * @return The symbols found, empty when the server answers no result
+     */
+    public CompletableFuture<List<SymbolInformation>> executeCommand(String command, List<Object> arguments) {
+        ExecuteCommandParams commandParams = new ExecuteCommandParams(command, arguments != null ? arguments : List.of());
+        CompletableFuture<List<SymbolInformation>> symbols = new CompletableFuture<>();
+        // Returns false, without any request left in flight, when the command was cancelled while queued
+        // or could not be sent
+        BooleanSupplier request = () -> {
+            if (symbols.isDone()) {
+                return false;
+            }
+            CompletableFuture<Object> commandResult;
+            try {
+                commandResult = languageServer.getWorkspaceService().executeCommand(commandParams);
+            } catch (RuntimeException e) {
+                symbols.completeExceptionally(e);
+                return false;
+            }
+            symbols.whenComplete((result, error) -> {
+                if (symbols.isCancelled()) {
+                    commandResult.cancel(true);
+                }
+            });
+            commandResult.whenComplete((result, error) -> {
+                release();
+                if (error != null) {
+                    symbols.completeExceptionally(error);
+                    return;
+                }
+                try {
+                    symbols.complete(toSymbols(command, result));
+                } catch (RuntimeException e) {
+                    symbols.completeExceptionally(e);
+                }
+            });
+            return true;
+        };
 
-        ExecuteCommandParams commandParams = new ExecuteCommandParams(
-            customCmd,
-            cmdArguments
-        );
+        synchronized (this) {
+            pendingRequests.add(request);
+        }
+        // A command cancelled while queued leaves the queue at once rather than when its turn comes
+        symbols.whenComplete((result, error) -> {
+            if (symbols.isCancelled()) {
+                synchronized (this) {
+                    pendingRequests.remove(request);
+                }
+            }
+        });
+        dispatch();
+        return symbols;
+    }
 
-        CompletableFuture<Object> commandResult = LS.getWorkspaceService()
-            .executeCommand(commandParams)
-            .exceptionally(
-                t -> {
-                    t.printStackTrace();
-                    return null;
-                });
+    /**
+     * Returns the number of requests sent to the server and not answered yet.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
 
-        Object result = commandResult.join();
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        List<SymbolInformation> symbolInformationList = new ArrayList<>();
+    /**
+     * Returns the number of requests waiting to be sent.
+     */
+    public synchronized int getPending() {
+        return pendingRequests.size();
+    }
 
-        if (result != null) {
-            logger.info("CLIENT: --- Search Results using as command: {}.", customCmd);
-            // TODO This code should be reviewed to adapt it according to the objects returned as response
-            logger.info("CLIENT: --- Result: {}", gson.toJson(result));
+    /**
+     * Free the slot of a completed request, and send the next queued one.
+     */
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
 
-            // Following the Konveyor approach to create SymbolInformation objects
-            try {
-                if (result instanceof List) {
-                    List<?> resultList = (List<?>) result;
-                    for (Object item : resultList) {
-                        SymbolInformation symbol = new SymbolInformation();
-
-                        // Extract data from the result object and populate SymbolInformation
-                        // This assumes the result contains objects with name, kind, and location data
-                        if (item instanceof java.util.Map) {
-                            java.util.Map<?, ?> itemMap = (java.util.Map<?, ?>) item;
-
-                            // Set name if available
-                            if (itemMap.containsKey("name")) {
-                                symbol.setName(String.valueOf(itemMap.get("name")));
-                            }
-
-                            // Set kind if available (convert to SymbolKind)
-                            if (itemMap.containsKey("kind")) {
-                                Object kindValue = itemMap.get("kind");
-                                if (kindValue instanceof Number) {
-                                    symbol.setKind(SymbolKind.forValue(((Number) kindValue).intValue()));
-                                }
-                            }
-
-                            // Set location if available
-                            if (itemMap.containsKey("location")) {
-                                // Parse location data - this would need to be adapted based on actual structure
-                                Object locationData = itemMap.get("location");
-                                Location location = gson.fromJson(gson.toJson(locationData), Location.class);
-                                symbol.setLocation(location);
-                            }
-
-                            symbolInformationList.add(symbol);
-                        }
-                    }
-                } else {
-                    // Fallback to direct GSON conversion if result is not a List
-                    Type SymbolInformationListType = new TypeToken<List<SymbolInformation>>() {}.getType();
-                    symbolInformationList = gson.fromJson(gson.toJson(result), SymbolInformationListType);
+    /**
+     * Send the queued requests while fewer than the maximum are in flight.
+     * A single thread sends at a time: a request completed while another one is sent, as by a server answering
+     * synchronously, leaves its slot to the loop already running instead of sending from its own callback,
+     * so the stack does not grow with the number of queued requests.
+     */
+    private void dispatch() {
+        synchronized (this) {
+            if (dispatching) {
+                return;
+            }
+            dispatching = true;
+        }
+        while (true) {
+            BooleanSupplier next;
+            synchronized (this) {
+                if (inFlight >= maxInFlight || pendingRequests.isEmpty()) {
+                    dispatching = false;
+                    return;
                 }
-            } catch (Exception e) {
-                logger.warn("CLIENT: Failed to create SymbolInformation objects: {}", e.getMessage());
-                // Fallback to GSON conversion
-                try {
-                    Type SymbolInformationListType = new TypeToken<List<SymbolInformation>>() {}.getType();
-                    symbolInformationList = gson.fromJson(gson.toJson(result), SymbolInformationListType);
-                } catch (JsonSyntaxException | ClassCastException ex) {
-                    logger.warn("CLIENT: Failed fallback GSON conversion: {}", ex.getMessage());
+                next = pendingRequests.poll();
+                inFlight++;
+            }
+            boolean sent;
+            try {
+                sent = next.getAsBoolean();
+            } catch (RuntimeException e) {
+                // The loop goes on, the other queued requests would otherwise never be sent
+                logger.error("CLIENT: Failed to send a queued command", e);
+                sent = false;
+            }
+            if (!sent) {
+                synchronized (this) {
+                    inFlight--;
                 }
             }
+        }
+    }
+
+    private static List<SymbolInformation> toSymbols(String command, Object result) {
+        if (result == null) {
+            logger.warn("CLIENT: Received null result for command {}.", command);
+            return new ArrayList<>();
+        }
+        if (Boolean.getBoolean(DUMP_RESULTS_PROPERTY)) {
+            logger.info("CLIENT: --- Result of {}: {}", command, PRETTY_GSON.toJson(result));
+        }
+        // Following the Konveyor approach to create SymbolInformation objects
+        return decodeSymbols(result);
+    }
+
+    /**
+     * Execute a command on the server and log the symbols found, blocking until the result is received.
+     * Prefer {@link #executeCommand(String, List)}, which does not block.
+     */
+    public static void executeCmd(String customCmd, List<Object> arguments, LanguageServer LS) {
+        List<SymbolInformation> symbolInformationList = new LsSearchService(LS, 1)
+            .executeCommand(customCmd, arguments)
+            .exceptionally(
+                t -> {
+                    t.printStackTrace();
+                    return null;
+                })
+            .join();
+        if (symbolInformationList != null) {
+            logSymbols(customCmd, symbolInformationList);
+        }
+    }
 
-            if (symbolInformationList.isEmpty()) {
-                logger.info("CLIENT: SymbolInformation List is empty.");
-            } else {
-                logger.info("CLIENT: Found {} usage(s)':", symbolInformationList.size());
+    /**
+     * Log the number of symbols found by a command, and every symbol when the results are dumped.
+     */
+    public static void logSymbols(String command, List<SymbolInformation> symbolInformationList) {
+        logger.info("CLIENT: --- Search Results using as command: {}.", command);
+        if (symbolInformationList.isEmpty()) {
+            logger.info("CLIENT: SymbolInformation List is empty.");
+        } else {
+            logger.info("CLIENT: Found {} usage(s)':", symbolInformationList.size());
+            if (Boolean.getBoolean(DUMP_RESULTS_PROPERTY)) {
                 for (SymbolInformation si : symbolInformationList) {
                     logger.info("CLIENT:  -> Found {} at: {} (line {}, char {})",
                         si.getName(),
@@ -118,10 +240,51 @@ public class LsSearchService {
                     );
                 }
             }
-            logger.info("CLIENT: ----------------------");
-        } else {
-            logger.warn("CLIENT: Received null result for command.");
         }
+        logger.info("CLIENT: ----------------------");
+    }
+
+    /**
+     * Decode the result of a command into symbols, reading the {@link JsonElement} tree of a remote result
+     * directly rather than printing it to a string and parsing it back. The items which are not objects,
+     * such as the project URIs of {@code java.project.getAll}, are skipped.
+     *
+     * @param result A {@link JsonElement}, as returned by a launcher, or the lists and maps of a local call
+     * @return The symbols having a name, kind and location, empty if the result is not a list
+     */
+    public static List<SymbolInformation> decodeSymbols(Object result) {
+        JsonElement json = result instanceof JsonElement ? (JsonElement) result : GSON.toJsonTree(result);
+        if (!json.isJsonArray()) {
+            logger.warn("CLIENT: Cannot create SymbolInformation objects from a {} result.", json.getClass().getSimpleName());
+            return new ArrayList<>();
+        }
+
+        JsonArray items = json.getAsJsonArray();
+        List<SymbolInformation> symbols = new ArrayList<>(items.size());
+        for (JsonElement item : items) {
+            if (!item.isJsonObject()) {
+                continue;
+            }
+            try {
+                symbols.add(GSON.fromJson(item, SymbolInformation.class));
+            } catch (JsonParseException e) {
+                logger.warn("CLIENT: Failed to create a SymbolInformation object: {}", e.getMessage());
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * Decode the result of a command into the symbol information used by the searches, see {@link #decodeSymbols(Object)}.
+     */
+    public static List<LSPSymbolInfo> decodeSymbolInfos(Object result) {
+        List<SymbolInformation> symbols = decodeSymbols(result);
+        List<LSPSymbolInfo> symbolInfos = new ArrayList<>(symbols.size());
+        for (SymbolInformation symbol : symbols) {
+            Location location = symbol.getLocation();
+            symbolInfos.add(new LSPSymbolInfo(symbol.getName(), location != null ? location.getUri() : null, symbol.getKind(), location));
+        }
+        return symbolInfos;
     }
 
     public static CompletableFuture<Optional<SymbolInformation>> searchWksSymbol(String annotationToFind, LanguageServer LS) {
@@ -0,0 +1,119 @@
+package dev.snowdrop.lsp.common.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import dev.snowdrop.lsp.model.RuleQuery;
+import dev.snowdrop.lsp.model.RuleResult;
+import io.konveyor.tackle.core.internal.RuleEntryParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Run a batch of rule queries over a single connection to the language server.
+ * <p>
+ * All the queries are submitted at once to an {@link LsSearchService}, whose window of requests in flight
+ * keeps the server busy without overloading it, so a ruleset costs about its slowest query rather than the
+ * sum of all of them. The symbols are aggregated per rule as the queries complete, in any order.
+ */
+public class RuleBatchRunner {
+    private static final Logger logger = LoggerFactory.getLogger(RuleBatchRunner.class);
+
+    public static final String RULE_ENTRY_COMMAND = "io.konveyor.tackle.ruleEntry";
+
+    private static final Gson GSON = new Gson();
+    private static final Type PARAMS_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
+
+    private final LsSearchService searchService;
+    private final String command;
+
+    public RuleBatchRunner(LsSearchService searchService) {
+        this(searchService, RULE_ENTRY_COMMAND);
+    }
+
+    public RuleBatchRunner(LsSearchService searchService, String command) {
+        this.searchService = searchService;
+        this.command = command;
+    }
+
+    /**
+     * Load the queries of a rules file: a JSON array of objects, each holding the {@code ruleId} it belongs to and
+     * the parameters of a {@code RuleEntryParams}. The {@code project} parameter defaults to {@code java}.
+     * <pre>
+     * [
+     *   {"ruleId": "snowdrop-00001", "query": "dev.snowdrop.MySearchableAnnotation", "location": "4", "analysisMode": "source-only"},
+     *   {"ruleId": "snowdrop-00002", "query": "java.rmi*", "location": "8", "analysisMode": "source-only"}
+     * ]
+     * </pre>
+     *
+     * @throws IllegalArgumentException If a query has no rule id or parameters the server cannot read
+     */
+    public static List<RuleQuery> loadQueries(Path rulesFile) throws IOException {
+        JsonArray entries;
+        try (Reader reader = Files.newBufferedReader(rulesFile)) {
+            entries = JsonParser.parseReader(reader).getAsJsonArray();
+        }
+
+        List<RuleQuery> queries = new ArrayList<>(entries.size());
+        for (JsonElement entry : entries) {
+            JsonObject object = entry.getAsJsonObject().deepCopy();
+            JsonElement ruleId = object.remove("ruleId");
+            if (ruleId == null || ruleId.isJsonNull()) {
+                throw new IllegalArgumentException("Missing ruleId in the query " + entry + " of " + rulesFile);
+            }
+            Map<String, Object> params = GSON.fromJson(object, PARAMS_TYPE);
+            params.putIfAbsent("project", "java");
+            try {
+                // Parsed as the server will, so that a malformed query fails the batch before it is sent
+                new RuleEntryParams(RULE_ENTRY_COMMAND, List.of(params));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid query of the rule " + ruleId.getAsString() + ": " + e.getMessage(), e);
+            }
+            queries.add(new RuleQuery(ruleId.getAsString(), params));
+        }
+        return queries;
+    }
+
+    /**
+     * Send all the queries and aggregate their symbols per rule. A failed query is recorded as an error of its
+     * rule and does not fail the batch.
+     *
+     * @return The results keyed by rule id, in the order of the first query of every rule
+     */
+    public CompletableFuture<Map<String, RuleResult>> run(List<RuleQuery> queries) {
+        Map<String, RuleResult> results = new LinkedHashMap<>();
+        List<CompletableFuture<?>> pending = new ArrayList<>(queries.size());
+        for (RuleQuery query : queries) {
+            RuleResult result = results.computeIfAbsent(query.getRuleId(), RuleResult::new);
+            long start = System.nanoTime();
+            pending.add(searchService.executeCommand(command, List.of(query.getParams()))
+                .whenComplete((symbols, error) -> {
+                    long queryMillis = (System.nanoTime() - start) / 1_000_000;
+                    if (error != null) {
+                        logger.warn("CLIENT: Query {} of the rule {} failed: {}", query.getParams().get("query"), query.getRuleId(), error.getMessage());
+                    }
+                    result.addQuery(symbols, error, queryMillis);
+                }));
+        }
+        logger.info("CLIENT: Submitted {} queries of {} rules.", queries.size(), results.size());
+        // The failures are recorded per rule, so the batch completes once every query has completed either way
+        return CompletableFuture.allOf(pending.stream()
+                .map(future -> future.handle((value, error) -> null))
+                .toArray(CompletableFuture[]::new))
+            .thenApply(done -> results);
+    }
+}
@@ -0,0 +1,180 @@
+package dev.snowdrop.lsp.common.services;
+
+import dev.snowdrop.lsp.common.services.scan.ScanListener;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.ProgressParams;
+import org.eclipse.lsp4j.WorkDoneProgressBegin;
+import org.eclipse.lsp4j.WorkDoneProgressEnd;
+import org.eclipse.lsp4j.WorkDoneProgressNotification;
+import org.eclipse.lsp4j.WorkDoneProgressReport;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.services.LanguageClient;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reports the progress of an annotation search to the client with {@code $/progress} notifications.
+ * <p>
+ * With a work done token, the search is reported as begun, then as a number of scanned files (and a
+ * percentage once the files have all been listed), then as ended. With a partial result token, the
+ * locations are sent in batches as the files are scanned, so that the client sees the first matches
+ * without waiting for the whole workspace: the response of the request is then empty, as required by the
+ * protocol. Batches are in the order the files complete, not sorted by path as the response would be.
+ * <p>
+ * A search served from the annotation index is reported the same way, an annotation at a time instead of a file.
+ * <p>
+ * Notifications are throttled to one per {@link #REPORT_INTERVAL_MILLIS} for each token, except the first
+ * batch of results which is sent at once.
+ */
+public class SearchProgress implements ScanListener<Map<String, List<Location>>> {
+    public static final long REPORT_INTERVAL_MILLIS = 100;
+
+    private final LanguageClient client;
+    private final Either<String, Integer> workDoneToken;
+    private final Either<String, Integer> partialResultToken;
+    private final List<String> annotationNames;
+    private final boolean keyedByName;
+    private final long intervalNanos;
+
+    private final Map<String, List<Location>> pendingResults = new LinkedHashMap<>();
+    private int completedFiles;
+    private int completedAnnotations;
+    private int fileCount = -1;
+    private int locationCount;
+    private boolean resultsSent;
+    private long lastResultsNanos;
+    private long lastReportNanos;
+
+    /**
+     * @param client The client receiving the notifications, or null to report nothing
+     * @param workDoneToken The token of the work done progress, or null
+     * @param partialResultToken The token of the partial results, or null
+     * @param annotationNames The searched annotations
+     * @param keyedByName Whether batches are sent as locations keyed by annotation name, or as a plain list
+     */
+    public SearchProgress(LanguageClient client, Either<String, Integer> workDoneToken, Either<String, Integer> partialResultToken,
+                          List<String> annotationNames, boolean keyedByName) {
+        this(client, workDoneToken, partialResultToken, annotationNames, keyedByName, REPORT_INTERVAL_MILLIS);
+    }
+
+    SearchProgress(LanguageClient client, Either<String, Integer> workDoneToken, Either<String, Integer> partialResultToken,
+                   List<String> annotationNames, boolean keyedByName, long intervalMillis) {
+        this.client = client;
+        this.workDoneToken = client != null ? workDoneToken : null;
+        this.partialResultToken = client != null ? partialResultToken : null;
+        this.annotationNames = annotationNames;
+        this.keyedByName = keyedByName;
+        this.intervalNanos = intervalMillis * 1_000_000;
+    }
+
+    /**
+     * Returns a progress reporting nothing.
+     */
+    public static SearchProgress none(List<String> annotationNames) {
+        return new SearchProgress(null, null, null, annotationNames, true);
+    }
+
+    /**
+     * Returns true if the results are sent as partial results rather than in the response.
+     */
+    public boolean isStreamingResults() {
+        return partialResultToken != null;
+    }
+
+    public synchronized void begin() {
+        if (workDoneToken == null) {
+            return;
+        }
+        WorkDoneProgressBegin begin = new WorkDoneProgressBegin();
+        begin.setTitle("Searching " + annotationNames.stream().map(name -> "@" + name).reduce((a, b) -> a + ", " + b).orElse(""));
+        begin.setCancellable(false);
+        begin.setPercentage(0);
+        notifyWorkDone(begin);
+        lastReportNanos = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void onWalkCompleted(int fileCount) {
+        this.fileCount = fileCount;
+    }
+
+    @Override
+    public synchronized void onFileCompleted(Path path, List<Map<String, List<Location>>> results) {
+        completedFiles++;
+        for (Map<String, List<Location>> locationsByName : results) {
+            addResults(locationsByName);
+        }
+        report(completedFiles + (fileCount >= 0 ? "/" + fileCount : "") + " files", fileCount > 0 ? completedFiles * 100 / fileCount : null);
+    }
+
+    /**
+     * Report the locations of an annotation looked up in the annotation index.
+     */
+    public synchronized void onAnnotationCompleted(String annotationName, List<Location> locations) {
+        completedAnnotations++;
+        addResults(Map.of(annotationName, locations));
+        report(completedAnnotations + "/" + annotationNames.size() + " annotations", completedAnnotations * 100 / annotationNames.size());
+    }
+
+    private void report(String completed, Integer percentage) {
+        long now = System.nanoTime();
+        if (!pendingResults.isEmpty() && (!resultsSent || now - lastResultsNanos >= intervalNanos)) {
+            sendResults(now);
+        }
+        if (workDoneToken != null && now - lastReportNanos >= intervalNanos) {
+            WorkDoneProgressReport report = new WorkDoneProgressReport();
+            report.setMessage(completed + ", " + locationCount + " matches");
+            report.setPercentage(percentage);
+            notifyWorkDone(report);
+            lastReportNanos = now;
+        }
+    }
+
+    /**
+     * Send the results not sent yet and end the work done progress.
+     */
+    public synchronized void end() {
+        if (!pendingResults.isEmpty()) {
+            sendResults(System.nanoTime());
+        }
+        if (workDoneToken != null) {
+            WorkDoneProgressEnd end = new WorkDoneProgressEnd();
+            end.setMessage("Found " + locationCount + " matches");
+            notifyWorkDone(end);
+        }
+    }
+
+    private void addResults(Map<String, List<Location>> locationsByName) {
+        locationsByName.forEach((annotationName, locations) -> {
+            if (!locations.isEmpty()) {
+                pendingResults.computeIfAbsent(annotationName, name -> new ArrayList<>()).addAll(locations);
+                locationCount += locations.size();
+            }
+        });
+    }
+
+    private void sendResults(long now) {
+        if (partialResultToken != null) {
+            Object batch;
+            if (keyedByName) {
+                batch = new LinkedHashMap<>(pendingResults);
+            } else {
+                List<Location> locations = new ArrayList<>();
+                pendingResults.values().forEach(locations::addAll);
+                batch = locations;
+            }
+            client.notifyProgress(new ProgressParams(partialResultToken, Either.forRight(batch)));
+        }
+        pendingResults.clear();
+        resultsSent = true;
+        lastResultsNanos = now;
+    }
+
+    private void notifyWorkDone(WorkDoneProgressNotification notification) {
+        client.notifyProgress(new ProgressParams(workDoneToken, Either.forLeft(notification)));
+    }
+}
@@ -6,34 +6,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.List;
 
 /**
- * AST Parser utility with singleton pattern for efficient parser reuse.
+ * AST Parser utility backed by a bounded pool of parsers so that files can be parsed concurrently.
+ * The ASTs of files read from disk are kept in the shared {@link CompilationUnitCache}, so an
+ * unchanged file is parsed once across queries.
  */
 public class ASTAnnotationParser {
     private static final Logger logger = LoggerFactory.getLogger(ASTAnnotationParser.class);
-    
-    // Singleton AST parser instance for efficient reuse
-    private static final ASTParser PARSER_INSTANCE = createParserInstance();
-    
-    /**
-     * Create a singleton ASTParser instance configured for Java parsing.
-     */
-    private static ASTParser createParserInstance() {
-        ASTParser parser = ASTParser.newParser(AST.getJLSLatest());
-        parser.setKind(ASTParser.K_COMPILATION_UNIT);
-        parser.setResolveBindings(false); // We don't need full binding resolution for annotation names
-        return parser;
-    }
-    
+
     /**
-     * Get the singleton ASTParser instance.
+     * Set the maximum number of files parsed concurrently.
+     *
+     * @param size The size of the parser pool
      */
-    public static ASTParser getParserInstance() {
-        return PARSER_INSTANCE;
+    public static void setParserPoolSize(int size) {
+        ASTParserPool.setDefaultSize(size);
     }
 
     /**
@@ -46,21 +38,46 @@ public class ASTAnnotationParser {
      * @throws IOException If the file cannot be read
      */
     public static List<Location> parseJavaFileForAnnotations(Path javaFile, String annotationName) throws IOException {
-        String source = Files.readString(javaFile);
-        
-        // Use singleton parser instance
-        synchronized (PARSER_INSTANCE) {
-            PARSER_INSTANCE.setSource(source.toCharArray());
-            
-            // Parse the source code
-            CompilationUnit compilationUnit = (CompilationUnit) PARSER_INSTANCE.createAST(null);
-            
-            // Create and run the annotation visitor
-            AnnotationVisitor visitor = new AnnotationVisitor(annotationName, compilationUnit, javaFile.toUri());
-            compilationUnit.accept(visitor);
-            
-            return visitor.getLocations();
-        }
+        CompilationUnit compilationUnit = CompilationUnitCache.getDefault().parse(javaFile, ParseMode.FULL);
+
+        AnnotationVisitor visitor = new AnnotationVisitor(annotationName, compilationUnit, javaFile.toUri());
+        compilationUnit.accept(visitor);
+
+        return visitor.getLocations();
+    }
+
+    /**
+     * Parse the already read content of a Java file to find annotations.
+     * Lets the buffer which passed {@link #quickAnnotationCheck(ByteBuffer, byte[])} be parsed without reading the file again.
+     * The content is always parsed, as it may not match the current state of the file.
+     *
+     * @param javaFile The Java file the content comes from
+     * @param content The UTF-8 content of the file
+     * @param annotationName The annotation name to search for (without @)
+     * @return List of locations where the annotation was found
+     */
+    public static List<Location> parseJavaFileForAnnotations(Path javaFile, ByteBuffer content, String annotationName) {
+        return parseJavaFileForAnnotations(javaFile, content, annotationName, ParseMode.FULL);
+    }
+
+    /**
+     * Parse the already read content of a Java file to find annotations.
+     *
+     * @param javaFile The Java file the content comes from
+     * @param content The UTF-8 content of the file
+     * @param annotationName The annotation name to search for (without @)
+     * @param mode Whether method bodies are parsed, see {@link ParseMode#DECLARATIONS_ONLY} for what is then not found
+     * @return List of locations where the annotation was found
+     */
+    public static List<Location> parseJavaFileForAnnotations(Path javaFile, ByteBuffer content, String annotationName, ParseMode mode) {
+        // Parse the source code using a parser leased from the pool
+        CompilationUnit compilationUnit = ASTParserPool.getDefault().parse(SourceBytes.decode(content), mode);
+
+        // Create and run the annotation visitor
+        AnnotationVisitor visitor = new AnnotationVisitor(annotationName, compilationUnit, javaFile.toUri());
+        compilationUnit.accept(visitor);
+
+        return visitor.getLocations();
     }
 
     /**
@@ -73,8 +90,28 @@ public class ASTAnnotationParser {
      * @throws IOException If the file cannot be read
      */
     public static boolean quickAnnotationCheck(Path javaFile, String annotationName) throws IOException {
-        String source = Files.readString(javaFile);
-        return source.contains("@" + annotationName);
+        return quickAnnotationCheck(SourceBytes.read(javaFile), annotationPattern(annotationName));
+    }
+
+    /**
+     * Check if the content of a Java file might contain an annotation, searching the UTF-8 bytes without decoding them.
+     *
+     * @param content The UTF-8 content of the file
+     * @param annotationPattern The bytes returned by {@link #annotationPattern(String)}
+     * @return true if the content might contain the annotation (requires AST parsing to confirm)
+     */
+    public static boolean quickAnnotationCheck(ByteBuffer content, byte[] annotationPattern) {
+        return SourceBytes.contains(content, annotationPattern);
+    }
+
+    /**
+     * Get the bytes searched by the quick check for an annotation, to be computed once per search.
+     *
+     * @param annotationName The annotation name (without @)
+     * @return The UTF-8 bytes of {@code @annotationName}
+     */
+    public static byte[] annotationPattern(String annotationName) {
+        return ("@" + annotationName).getBytes(StandardCharsets.UTF_8);
     }
 
     /**
@@ -85,19 +122,12 @@ public class ASTAnnotationParser {
      * @throws IOException If the file cannot be read
      */
     public static AnnotationSearchResult analyzeAllAnnotations(Path javaFile) throws IOException {
-        String source = Files.readString(javaFile);
-        
-        // Use singleton parser instance
-        synchronized (PARSER_INSTANCE) {
-            PARSER_INSTANCE.setSource(source.toCharArray());
-            
-            CompilationUnit compilationUnit = (CompilationUnit) PARSER_INSTANCE.createAST(null);
-            
-            AllAnnotationsVisitor visitor = new AllAnnotationsVisitor(compilationUnit, javaFile.toUri());
-            compilationUnit.accept(visitor);
-            
-            return new AnnotationSearchResult(javaFile, visitor.getAnnotationInfo());
-        }
+        CompilationUnit compilationUnit = CompilationUnitCache.getDefault().parse(javaFile, ParseMode.FULL);
+
+        AllAnnotationsVisitor visitor = new AllAnnotationsVisitor(compilationUnit, javaFile.toUri());
+        compilationUnit.accept(visitor);
+
+        return new AnnotationSearchResult(javaFile, visitor.getAnnotationInfo());
     }
 
     /**
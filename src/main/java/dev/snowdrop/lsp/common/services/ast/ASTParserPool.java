@@ -0,0 +1,163 @@
+package dev.snowdrop.lsp.common.services.ast;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of ASTParser instances allowing several files to be parsed concurrently.
+ * <p>
+ * An ASTParser is not thread-safe and resets its settings after each {@code createAST} call,
+ * so a parser is leased by one thread at a time and reconfigured on every lease.
+ * The pool size bounds the number of parses (and thus of ASTs being built) running in parallel.
+ */
+public class ASTParserPool {
+    private static final Logger logger = LoggerFactory.getLogger(ASTParserPool.class);
+
+    private static volatile ASTParserPool defaultPool = new ASTParserPool(Runtime.getRuntime().availableProcessors());
+
+    private final int size;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<ASTParser> idleParsers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger parserCount = new AtomicInteger();
+
+    public ASTParserPool(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Parser pool size must be at least 1, got " + size);
+        }
+        this.size = size;
+        this.permits = new Semaphore(size);
+    }
+
+    /**
+     * Get the pool shared by the annotation parsers.
+     */
+    public static ASTParserPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * Replace the shared pool by a new one of the given size.
+     * Parses running on the previous pool complete normally.
+     *
+     * @param size The maximum number of concurrent parses
+     */
+    public static void setDefaultSize(int size) {
+        defaultPool = new ASTParserPool(size);
+        logger.info("SERVER: AST parser pool sized to {}", size);
+    }
+
+    /**
+     * Create an ASTParser configured for Java parsing.
+     */
+    static ASTParser createParser() {
+        ASTParser parser = ASTParser.newParser(AST.getJLSLatest());
+        configure(parser, ParseMode.FULL);
+        return parser;
+    }
+
+    /**
+     * Apply the settings used for annotation searches.
+     */
+    private static void configure(ASTParser parser, ParseMode mode) {
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setResolveBindings(false); // We don't need full binding resolution for annotation names
+        if (mode == ParseMode.DECLARATIONS_ONLY) {
+            parser.setIgnoreMethodBodies(true);
+            parser.setStatementsRecovery(false);
+        }
+    }
+
+    /**
+     * Parse the given source with a leased parser, blocking while all the parsers are in use.
+     *
+     * @param source The Java source code
+     * @return The parsed compilation unit
+     */
+    public CompilationUnit parse(char[] source) {
+        return parse(source, ParseMode.FULL);
+    }
+
+    /**
+     * Parse the given source with a leased parser, blocking while all the parsers are in use.
+     *
+     * @param source The Java source code
+     * @param mode Whether method bodies are parsed
+     * @return The parsed compilation unit
+     */
+    public CompilationUnit parse(char[] source, ParseMode mode) {
+        permits.acquireUninterruptibly();
+        ASTParser parser = idleParsers.poll();
+        try {
+            if (parser == null) {
+                parser = newParser();
+            }
+            configure(parser, mode);
+            parser.setSource(source);
+            return (CompilationUnit) parser.createAST(null);
+        } finally {
+            if (parser != null) {
+                idleParsers.offer(parser);
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * Parse several files with a single leased parser, letting JDT reuse its internal state between them.
+     * Each compilation unit is handed to the requestor as soon as it is built.
+     * <p>
+     * JDT reads the files from disk itself: outside an Eclipse workspace, {@code createASTs} only accepts file
+     * paths. A file whose content was already read, by a prefilter for example, is thus read twice. The
+     * {@link dev.snowdrop.lsp.common.services.scan.ScanPipeline} parses the content it read with
+     * {@link #parse(char[], ParseMode)} instead, and is preferred when the contents are in memory.
+     *
+     * @param sourceFilePaths The paths of the UTF-8 encoded Java files
+     * @param mode Whether method bodies are parsed
+     * @param requestor The requestor receiving the compilation units
+     */
+    public void parseBatch(String[] sourceFilePaths, ParseMode mode, FileASTRequestor requestor) {
+        String[] encodings = new String[sourceFilePaths.length];
+        Arrays.fill(encodings, StandardCharsets.UTF_8.name());
+
+        permits.acquireUninterruptibly();
+        ASTParser parser = idleParsers.poll();
+        try {
+            if (parser == null) {
+                parser = newParser();
+            }
+            configure(parser, mode);
+            parser.createASTs(sourceFilePaths, encodings, new String[0], requestor, null);
+        } finally {
+            if (parser != null) {
+                idleParsers.offer(parser);
+            }
+            permits.release();
+        }
+    }
+
+    private ASTParser newParser() {
+        parserCount.incrementAndGet();
+        return ASTParser.newParser(AST.getJLSLatest());
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of parsers created by the pool, never more than its size.
+     */
+    public int getParserCount() {
+        return parserCount.get();
+    }
+}
@@ -0,0 +1,112 @@
+package dev.snowdrop.lsp.common.services.ast;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Byte-level pre-filter matching the annotations of a file against a set of annotation simple names.
+ * <p>
+ * Each {@code @} of the content is followed by the annotation name, possibly qualified; the simple
+ * name (last segment) is hashed while it is read and looked up in a hash table, so the cost of the
+ * check does not grow with the number of searched annotations.
+ */
+public class AnnotationNameFilter {
+    private final Set<String> names;
+    private final Map<Integer, List<byte[]>> namesByHash = new HashMap<>();
+
+    /**
+     * @param annotationNames The annotation simple names (without @)
+     */
+    public AnnotationNameFilter(Collection<String> annotationNames) {
+        this.names = Collections.unmodifiableSet(new LinkedHashSet<>(annotationNames));
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            namesByHash.computeIfAbsent(hash(bytes, 0, bytes.length), h -> new ArrayList<>(1)).add(bytes);
+        }
+    }
+
+    /**
+     * Check if the content of a Java file might contain one of the annotations.
+     *
+     * @param content The UTF-8 content of the file, left untouched
+     * @return true if the content might contain one of the annotations (requires AST parsing to confirm)
+     */
+    public boolean mayContainAny(ByteBuffer content) {
+        int limit = content.limit();
+        int i = content.position();
+        while (i < limit) {
+            if (content.get(i++) != '@') {
+                continue;
+            }
+            // Read a possibly qualified name, remembering where its last segment starts
+            int segmentStart = i;
+            int hash = 0;
+            while (i < limit) {
+                byte b = content.get(i);
+                if (b == '.') {
+                    segmentStart = ++i;
+                    hash = 0;
+                } else if (isIdentifierPart(b)) {
+                    hash = 31 * hash + b;
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            if (i > segmentStart && matches(content, segmentStart, i, hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<String> getNames() {
+        return names;
+    }
+
+    private boolean matches(ByteBuffer content, int start, int end, int hash) {
+        List<byte[]> candidates = namesByHash.get(hash);
+        if (candidates == null) {
+            return false;
+        }
+        for (byte[] candidate : candidates) {
+            if (candidate.length == end - start && equalsAt(content, start, candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equalsAt(ByteBuffer content, int start, byte[] candidate) {
+        for (int j = 0; j < candidate.length; j++) {
+            if (content.get(start + j) != candidate[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * ASCII letters, digits, '_' and '$', plus any byte of a multibyte UTF-8 sequence.
+     */
+    private static boolean isIdentifierPart(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+            || b == '_' || b == '$' || b < 0;
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash;
+    }
+}
@@ -9,27 +9,59 @@ import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * AST visitor that searches for specific annotations in Java source code.
  * Uses Eclipse JDT's AST parsing for accurate syntax analysis.
+ * Several annotations can be searched in a single traversal; when no target annotation is given,
+ * every annotation is collected. Locations are also grouped by annotation simple name.
  */
 public class AnnotationVisitor extends ASTVisitor {
     private static final Logger logger = LoggerFactory.getLogger(AnnotationVisitor.class);
     
-    private final String targetAnnotationName;
+    private final Set<String> targetAnnotationNames;
     private final List<Location> locations;
+    private final Map<String, List<Location>> locationsByName;
+    private final Set<Location> bodyLocations;
     private final CompilationUnit compilationUnit;
     private final URI fileUri;
 
+    /**
+     * @param targetAnnotationName The simple name of the annotation to find
+     * @param compilationUnit The compilation unit visited
+     * @param fileUri The URI of the file of the compilation unit
+     */
     public AnnotationVisitor(String targetAnnotationName, CompilationUnit compilationUnit, URI fileUri) {
-        this.targetAnnotationName = targetAnnotationName;
+        this(Set.of(targetAnnotationName), compilationUnit, fileUri);
+    }
+
+    /**
+     * @param targetAnnotationNames The simple names of the annotations to find, or null to collect all the annotations
+     * @param compilationUnit The compilation unit visited
+     * @param fileUri The URI of the file of the compilation unit
+     */
+    public AnnotationVisitor(Set<String> targetAnnotationNames, CompilationUnit compilationUnit, URI fileUri) {
+        this.targetAnnotationNames = targetAnnotationNames;
         this.locations = new ArrayList<>();
+        this.locationsByName = new LinkedHashMap<>();
+        this.bodyLocations = Collections.newSetFromMap(new IdentityHashMap<>());
         this.compilationUnit = compilationUnit;
         this.fileUri = fileUri;
     }
 
+    /**
+     * Create a visitor collecting all the annotations of the compilation unit.
+     */
+    public static AnnotationVisitor forAllAnnotations(CompilationUnit compilationUnit, URI fileUri) {
+        return new AnnotationVisitor((Set<String>) null, compilationUnit, fileUri);
+    }
+
     @Override
     public boolean visit(MarkerAnnotation node) {
         return visitAnnotation(node.getTypeName(), node);
@@ -48,7 +80,7 @@ public class AnnotationVisitor extends ASTVisitor {
     private boolean visitAnnotation(Name typeName, Annotation annotation) {
         String annotationName = getAnnotationName(typeName);
         
-        if (targetAnnotationName.equals(annotationName)) {
+        if (targetAnnotationNames == null || targetAnnotationNames.contains(annotationName)) {
             logger.debug("Found annotation @{} at position {}", annotationName, annotation.getStartPosition());
             
             // Convert AST position to LSP position
@@ -58,9 +90,16 @@ public class AnnotationVisitor extends ASTVisitor {
             
             Location location = new Location(fileUri.toString(), range);
             locations.add(location);
-            
-            logger.info("SERVER: Found annotation @{} in file: {} at line {}, column {}", 
-                       annotationName, fileUri, lspPosition.getLine() + 1, lspPosition.getCharacter() + 1);
+            locationsByName.computeIfAbsent(annotationName, name -> new ArrayList<>()).add(location);
+            if (isInBody(annotation)) {
+                bodyLocations.add(location);
+            }
+
+            // Collecting all the annotations happens when indexing the workspace, which would flood the log
+            if (targetAnnotationNames != null) {
+                logger.info("SERVER: Found annotation @{} in file: {} at line {}, column {}",
+                           annotationName, fileUri, lspPosition.getLine() + 1, lspPosition.getCharacter() + 1);
+            }
         }
         
         return true; // Continue visiting
@@ -78,6 +117,24 @@ public class AnnotationVisitor extends ASTVisitor {
         return typeName.toString();
     }
 
+    /**
+     * Checks whether an annotation sits in a method, constructor or lambda body,
+     * i.e. in the code skipped by {@link ParseMode#DECLARATIONS_ONLY}.
+     */
+    private boolean isInBody(Annotation annotation) {
+        ASTNode current = annotation;
+        ASTNode parent = current.getParent();
+        while (parent != null) {
+            if ((parent instanceof MethodDeclaration && current == ((MethodDeclaration) parent).getBody())
+                || (parent instanceof LambdaExpression && current == ((LambdaExpression) parent).getBody())) {
+                return true;
+            }
+            current = parent;
+            parent = current.getParent();
+        }
+        return false;
+    }
+
     /**
      * Converts an AST character position to LSP Position (line, character).
      */
@@ -88,9 +145,24 @@ public class AnnotationVisitor extends ASTVisitor {
     }
 
     /**
-     * Returns the list of locations where the target annotation was found.
+     * Returns the list of locations where the target annotations were found.
      */
     public List<Location> getLocations() {
         return locations;
     }
+
+    /**
+     * Returns the locations found grouped by annotation simple name, in visit order.
+     */
+    public Map<String, List<Location>> getLocationsByName() {
+        return locationsByName;
+    }
+
+    /**
+     * Returns the locations found in method, constructor or lambda bodies, which a
+     * {@link ParseMode#DECLARATIONS_ONLY} parse would not contain. The set compares locations by identity.
+     */
+    public Set<Location> getBodyLocations() {
+        return bodyLocations;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package dev.snowdrop.lsp.common.services.ast;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+import org.eclipse.lsp4j.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Annotation search parsing many files per {@code ASTParser.createASTs} call instead of one
+ * {@code createAST} call per file, which lets JDT reuse its internal state across the files of a batch.
+ * <p>
+ * Meant to be fed with the candidate files of a workspace scan, i.e. the files which passed
+ * {@link ASTAnnotationParser#quickAnnotationCheck(Path, String)}. JDT reads the files again to parse them,
+ * see {@link ASTParserPool#parseBatch(String[], ParseMode, FileASTRequestor)}.
+ */
+public class BatchAnnotationParser {
+    private static final Logger logger = LoggerFactory.getLogger(BatchAnnotationParser.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final int batchSize;
+    private final ParseMode parseMode;
+
+    public BatchAnnotationParser() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize The number of files parsed by each createASTs call
+     */
+    public BatchAnnotationParser(int batchSize) {
+        this(batchSize, ParseMode.FULL);
+    }
+
+    /**
+     * @param batchSize The number of files parsed by each createASTs call
+     * @param parseMode Whether method bodies are parsed
+     */
+    public BatchAnnotationParser(int batchSize, ParseMode parseMode) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, got " + batchSize);
+        }
+        this.batchSize = batchSize;
+        this.parseMode = parseMode;
+    }
+
+    /**
+     * Parse the given files in batches to find an annotation.
+     *
+     * @param javaFiles The Java files to parse
+     * @param annotationName The annotation name to search for (without @)
+     * @return The locations of the annotation, in the order of the given files
+     */
+    public List<Location> parseJavaFilesForAnnotations(List<Path> javaFiles, String annotationName) {
+        Map<Path, List<Location>> locationsByFile = new HashMap<>();
+        FileASTRequestor requestor = new FileASTRequestor() {
+            @Override
+            public void acceptAST(String sourceFilePath, CompilationUnit compilationUnit) {
+                Path javaFile = Paths.get(sourceFilePath);
+                AnnotationVisitor visitor = new AnnotationVisitor(annotationName, compilationUnit, javaFile.toUri());
+                compilationUnit.accept(visitor);
+                locationsByFile.put(javaFile, visitor.getLocations());
+            }
+        };
+
+        for (int start = 0; start < javaFiles.size(); start += batchSize) {
+            List<Path> batch = javaFiles.subList(start, Math.min(start + batchSize, javaFiles.size()));
+            String[] sourceFilePaths = batch.stream().map(Path::toString).toArray(String[]::new);
+            logger.debug("Parsing batch of {} files starting at {}", sourceFilePaths.length, start);
+            ASTParserPool.getDefault().parseBatch(sourceFilePaths, parseMode, requestor);
+        }
+
+        List<Location> locations = new ArrayList<>();
+        for (Path javaFile : javaFiles) {
+            List<Location> fileLocations = locationsByFile.get(javaFile);
+            if (fileLocations != null) {
+                locations.addAll(fileLocations);
+            }
+        }
+        return locations;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+}
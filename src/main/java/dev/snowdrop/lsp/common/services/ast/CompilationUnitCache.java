@@ -0,0 +1,323 @@
+package dev.snowdrop.lsp.common.services.ast;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the ASTs of files on disk, keyed by the {@link ContentHash} of their content and the parse mode.
+ * <p>
+ * As the key is the content and not the path, a file rewritten with the same bytes (a checkout or a
+ * formatter touching it) is not parsed again, and a source copied at several paths is parsed once: the
+ * visitors are given the URI of each path, so only the URIs differ in the results. The last
+ * {@link FileStamp} and hash of the recently parsed files are remembered, so that a file whose stamp did
+ * not change is neither read nor hashed again. A content being parsed by a thread is awaited by the other
+ * threads asking for it instead of being parsed twice.
+ * <p>
+ * The cache is bounded by the estimated memory weight of the cached units rather than by their number,
+ * as the AST of a large file costs as much as those of many small ones. The least recently used units
+ * are evicted first. Units are also held through soft references, so the garbage collector can release
+ * them under heap pressure before the bound is reached.
+ */
+public class CompilationUnitCache {
+    private static final Logger logger = LoggerFactory.getLogger(CompilationUnitCache.class);
+
+    /**
+     * Rough size of an AST per character of source, measured on JDT compilation units without bindings.
+     */
+    public static final int ESTIMATED_BYTES_PER_CHAR = 16;
+
+    /**
+     * Default number of files whose last stamp and hash are remembered.
+     */
+    public static final int DEFAULT_MAX_KNOWN_FILES = 100_000;
+
+    private static volatile CompilationUnitCache defaultCache = new CompilationUnitCache(Runtime.getRuntime().maxMemory() / 4);
+
+    private final long maxWeight;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReferenceQueue<CompilationUnit> collected = new ReferenceQueue<>();
+    private final Map<Path, StampedHash> hashesByFile;
+    private final Map<Key, CompletableFuture<CompilationUnit>> parsing = new ConcurrentHashMap<>();
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long collectedCount;
+
+    /**
+     * @param maxWeight The maximum estimated weight, in bytes, of the cached units
+     */
+    public CompilationUnitCache(long maxWeight) {
+        this(maxWeight, DEFAULT_MAX_KNOWN_FILES);
+    }
+
+    /**
+     * @param maxWeight The maximum estimated weight, in bytes, of the cached units
+     * @param maxKnownFiles The maximum number of files whose last stamp and hash are remembered, the least
+     *                      recently used being forgotten first. A forgotten file is hashed again on its next parse.
+     */
+    public CompilationUnitCache(long maxWeight, int maxKnownFiles) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("Cache weight must be at least 1, got " + maxWeight);
+        }
+        if (maxKnownFiles < 1) {
+            throw new IllegalArgumentException("Known files must be at least 1, got " + maxKnownFiles);
+        }
+        this.maxWeight = maxWeight;
+        this.hashesByFile = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, StampedHash> eldest) {
+                return size() > maxKnownFiles;
+            }
+        });
+    }
+
+    /**
+     * Get the cache shared by the annotation parsers and the workspace scans.
+     */
+    public static CompilationUnitCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Replace the shared cache by an empty one bounded by the given weight.
+     *
+     * @param maxWeight The maximum estimated weight, in bytes, of the cached units
+     */
+    public static void setDefaultMaxWeight(long maxWeight) {
+        defaultCache = new CompilationUnitCache(maxWeight);
+        logger.info("SERVER: Compilation unit cache bounded to {} bytes", maxWeight);
+    }
+
+    /**
+     * Get the AST of a file from the cache, or read and parse the file.
+     *
+     * @param file The Java file
+     * @param mode Whether method bodies are parsed
+     * @return The AST of the current content of the file
+     * @throws IOException If the file cannot be read
+     */
+    public CompilationUnit parse(Path file, ParseMode mode) throws IOException {
+        FileStamp stamp = FileStamp.of(file);
+        StampedHash known = hashesByFile.get(file);
+        if (known != null && known.stamp.equals(stamp)) {
+            CompilationUnit compilationUnit = getIfPresent(new Key(known.hash, mode));
+            if (compilationUnit != null) {
+                return compilationUnit;
+            }
+        }
+        ByteBuffer content = SourceBytes.read(file);
+        return parse(stamp, content, () -> SourceBytes.decode(content), mode);
+    }
+
+    /**
+     * Get the AST of a file content which has already been read, decoding and parsing the content
+     * only when it is not cached.
+     *
+     * @param stamp The stamp of the file, read before its content
+     * @param content The UTF-8 content of the file
+     * @param chars Supplier of the decoded content
+     * @param mode Whether method bodies are parsed
+     * @return The AST of the content
+     */
+    public CompilationUnit parse(FileStamp stamp, ByteBuffer content, Supplier<char[]> chars, ParseMode mode) {
+        StampedHash known = hashesByFile.get(stamp.getPath());
+        long hash = known != null && known.stamp.equals(stamp) ? known.hash : ContentHash.of(content);
+        hashesByFile.put(stamp.getPath(), new StampedHash(stamp, hash));
+        return parse(new Key(hash, mode), chars);
+    }
+
+    /**
+     * Forget a file which has been deleted. Its AST stays cached for the other paths with the same content.
+     */
+    public void invalidate(Path file) {
+        hashesByFile.remove(file);
+    }
+
+    public synchronized Stats getStats() {
+        purgeCollected();
+        return new Stats(hitCount, missCount, evictionCount, collectedCount, entries.size(), weight);
+    }
+
+    private CompilationUnit parse(Key key, Supplier<char[]> chars) {
+        CompilationUnit compilationUnit = getIfPresent(key);
+        if (compilationUnit != null) {
+            return compilationUnit;
+        }
+        CompletableFuture<CompilationUnit> ownParse = new CompletableFuture<>();
+        CompletableFuture<CompilationUnit> runningParse = parsing.putIfAbsent(key, ownParse);
+        if (runningParse != null) {
+            // The same content is being parsed for another path
+            countHit();
+            return runningParse.join();
+        }
+        countMiss();
+        try {
+            char[] source = chars.get();
+            compilationUnit = ASTParserPool.getDefault().parse(source, key.mode);
+            put(key, compilationUnit, source.length);
+            ownParse.complete(compilationUnit);
+            return compilationUnit;
+        } catch (Throwable e) {
+            // Errors too, such as a stack overflow on deeply nested code, would leave the waiting threads blocked
+            ownParse.completeExceptionally(e);
+            throw e;
+        } finally {
+            parsing.remove(key);
+        }
+    }
+
+    private synchronized CompilationUnit getIfPresent(Key key) {
+        purgeCollected();
+        Entry entry = entries.get(key);
+        CompilationUnit compilationUnit = entry != null ? entry.get() : null;
+        if (compilationUnit != null) {
+            hitCount++;
+        }
+        return compilationUnit;
+    }
+
+    private synchronized void countHit() {
+        hitCount++;
+    }
+
+    private synchronized void countMiss() {
+        missCount++;
+    }
+
+    private synchronized void put(Key key, CompilationUnit compilationUnit, int sourceLength) {
+        purgeCollected();
+        long entryWeight = (long) sourceLength * ESTIMATED_BYTES_PER_CHAR;
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(key, entryWeight, compilationUnit, collected));
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += entryWeight;
+
+        // Evict the least recently used units until the cache fits its bound
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            weight -= entry.weight;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Remove the entries whose unit has been released by the garbage collector.
+     */
+    private void purgeCollected() {
+        Entry entry;
+        while ((entry = (Entry) collected.poll()) != null) {
+            // The entry may already have been replaced by a newer parse of the content
+            if (entries.get(entry.key) == entry) {
+                entries.remove(entry.key);
+                weight -= entry.weight;
+                collectedCount++;
+            }
+        }
+    }
+
+    private static class Key {
+        private final long hash;
+        private final ParseMode mode;
+
+        Key(long hash, ParseMode mode) {
+            this.hash = hash;
+            this.mode = mode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return hash == that.hash && mode == that.mode;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) * 31 + mode.hashCode();
+        }
+    }
+
+    private static class StampedHash {
+        private final FileStamp stamp;
+        private final long hash;
+
+        StampedHash(FileStamp stamp, long hash) {
+            this.stamp = stamp;
+            this.hash = hash;
+        }
+    }
+
+    private static class Entry extends SoftReference<CompilationUnit> {
+        private final Key key;
+        private final long weight;
+
+        Entry(Key key, long weight, CompilationUnit compilationUnit, ReferenceQueue<CompilationUnit> queue) {
+            super(compilationUnit, queue);
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Snapshot of the cache counters.
+     */
+    public static class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long collectedCount;
+        private final int entryCount;
+        private final long weight;
+
+        public Stats(long hitCount, long missCount, long evictionCount, long collectedCount, int entryCount, long weight) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.collectedCount = collectedCount;
+            this.entryCount = entryCount;
+            this.weight = weight;
+        }
+
+        public long getHitCount() { return hitCount; }
+        public long getMissCount() { return missCount; }
+        /** Returns the number of units evicted to respect the weight bound. */
+        public long getEvictionCount() { return evictionCount; }
+        /** Returns the number of units released by the garbage collector under heap pressure. */
+        public long getCollectedCount() { return collectedCount; }
+        public int getEntryCount() { return entryCount; }
+        public long getWeight() { return weight; }
+
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRate=%.2f evictions=%d collected=%d entries=%d weight=%d",
+                hitCount, missCount, getHitRate(), evictionCount, collectedCount, entryCount, weight);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package dev.snowdrop.lsp.common.services.ast;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fast non-cryptographic 64-bit hash of a file content, used to recognize a content which has already
+ * been parsed: a file rewritten with the same bytes, or the same source copied at several paths.
+ * <p>
+ * The content is consumed eight bytes at a time with a multiply-rotate round in the style of xxHash,
+ * followed by the MurmurHash3 finalizer, the length of the content being mixed into the seed.
+ * Hashing is much cheaper than parsing, and collisions of 64-bit hashes are negligible at the
+ * scale of a workspace.
+ */
+public final class ContentHash {
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+
+    private ContentHash() {
+    }
+
+    /**
+     * Hash UTF-8 content.
+     *
+     * @param content The content to hash, left untouched
+     * @return The 64-bit hash of the remaining bytes of the buffer
+     */
+    public static long of(ByteBuffer content) {
+        ByteBuffer buffer = content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long hash = PRIME_3 + buffer.remaining();
+        while (buffer.remaining() >= Long.BYTES) {
+            hash = Long.rotateLeft(hash ^ round(buffer.getLong()), 27) * PRIME_1 + PRIME_3;
+        }
+        while (buffer.hasRemaining()) {
+            hash = Long.rotateLeft(hash ^ (buffer.get() & 0xFFL) * PRIME_3, 11) * PRIME_1;
+        }
+        return finish(hash);
+    }
+
+    private static long round(long input) {
+        return Long.rotateLeft(input * PRIME_2, 31) * PRIME_1;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,148 @@
+package dev.snowdrop.lsp.common.services.ast;
+
+import org.eclipse.jdt.core.dom.*;
+import org.eclipse.lsp4j.DocumentSymbol;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SymbolKind;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * AST visitor building the outline of a compilation unit: the declared types, with their methods,
+ * fields, enum constants and member types as children.
+ * <p>
+ * The range of a symbol covers its whole declaration, including javadoc and annotations, while its
+ * selection range is its name. Kinds are the ones of {@link SymbolVisitor}.
+ */
+public class DocumentSymbolVisitor extends ASTVisitor {
+    private final CompilationUnit compilationUnit;
+    private final List<DocumentSymbol> symbols = new ArrayList<>();
+    private final Deque<DocumentSymbol> containers = new ArrayDeque<>();
+
+    public DocumentSymbolVisitor(CompilationUnit compilationUnit) {
+        this.compilationUnit = compilationUnit;
+    }
+
+    @Override
+    public boolean visit(TypeDeclaration node) {
+        return visitType(node, node.isInterface() ? SymbolKind.Interface : SymbolKind.Class);
+    }
+
+    @Override
+    public void endVisit(TypeDeclaration node) {
+        containers.pop();
+    }
+
+    @Override
+    public boolean visit(AnnotationTypeDeclaration node) {
+        return visitType(node, SymbolKind.Interface);
+    }
+
+    @Override
+    public void endVisit(AnnotationTypeDeclaration node) {
+        containers.pop();
+    }
+
+    @Override
+    public boolean visit(EnumDeclaration node) {
+        return visitType(node, SymbolKind.Enum);
+    }
+
+    @Override
+    public void endVisit(EnumDeclaration node) {
+        containers.pop();
+    }
+
+    @Override
+    public boolean visit(RecordDeclaration node) {
+        return visitType(node, SymbolKind.Class);
+    }
+
+    @Override
+    public void endVisit(RecordDeclaration node) {
+        containers.pop();
+    }
+
+    @Override
+    public boolean visit(MethodDeclaration node) {
+        String parameters = ((List<?>) node.parameters()).stream()
+            .map(parameter -> ((SingleVariableDeclaration) parameter).getType().toString())
+            .collect(Collectors.joining(", ", "(", ")"));
+        String detail = node.getReturnType2() == null ? parameters : parameters + " : " + node.getReturnType2();
+        addSymbol(node, node.getName(), node.isConstructor() ? SymbolKind.Constructor : SymbolKind.Method, detail);
+        return false; // Local declarations are not part of the outline
+    }
+
+    @Override
+    public boolean visit(AnnotationTypeMemberDeclaration node) {
+        addSymbol(node, node.getName(), SymbolKind.Method, "() : " + node.getType());
+        return false;
+    }
+
+    @Override
+    public boolean visit(FieldDeclaration node) {
+        for (Object fragment : node.fragments()) {
+            VariableDeclarationFragment variable = (VariableDeclarationFragment) fragment;
+            // A declaration of several fields is shared by their symbols
+            addSymbol(node, variable.getName(), SymbolKind.Field, node.getType().toString());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean visit(EnumConstantDeclaration node) {
+        addSymbol(node, node.getName(), SymbolKind.EnumMember, null);
+        return false;
+    }
+
+    @Override
+    public boolean visit(Initializer node) {
+        return false;
+    }
+
+    private boolean visitType(AbstractTypeDeclaration node, SymbolKind kind) {
+        containers.push(addSymbol(node, node.getName(), kind, null));
+        return true;
+    }
+
+    private DocumentSymbol addSymbol(ASTNode declaration, SimpleName name, SymbolKind kind, String detail) {
+        DocumentSymbol symbol = new DocumentSymbol(name.getIdentifier(), kind, toRange(declaration), toRange(name), detail);
+        DocumentSymbol container = containers.peek();
+        if (container == null) {
+            symbols.add(symbol);
+        } else {
+            if (container.getChildren() == null) {
+                container.setChildren(new ArrayList<>());
+            }
+            container.getChildren().add(symbol);
+        }
+        return symbol;
+    }
+
+    private Range toRange(ASTNode node) {
+        Position start = toPosition(node.getStartPosition());
+        if (node.getLength() == 0) {
+            return new Range(start, start);
+        }
+        // The end is computed from the last character of the node, as the position after it has no line
+        // when the node ends the file
+        Position last = toPosition(node.getStartPosition() + node.getLength() - 1);
+        return new Range(start, new Position(last.getLine(), last.getCharacter() + 1));
+    }
+
+    private Position toPosition(int astPosition) {
+        return new Position(compilationUnit.getLineNumber(astPosition) - 1, compilationUnit.getColumnNumber(astPosition));
+    }
+
+    /**
+     * Returns the top-level types in declaration order, each holding its members as children.
+     */
+    public List<DocumentSymbol> getSymbols() {
+        return symbols;
+    }
+}
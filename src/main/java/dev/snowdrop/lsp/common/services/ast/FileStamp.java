@@ -0,0 +1,54 @@
+package dev.snowdrop.lsp.common.services.ast;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Identity of a file content: its path, last modification time and size. A file with the same stamp
+ * is assumed to have the same content, as done by build tools for incremental compilation.
+ */
+public final class FileStamp {
+    private final Path path;
+    private final long lastModified;
+    private final long size;
+
+    public FileStamp(Path path, long lastModified, long size) {
+        this.path = path;
+        this.lastModified = lastModified;
+        this.size = size;
+    }
+
+    /**
+     * Read the stamp of a file. To be called before reading the content, so that a change made
+     * while reading gives a newer stamp than the one associated with the content.
+     */
+    public static FileStamp of(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return new FileStamp(path, attributes.lastModifiedTime().toMillis(), attributes.size());
+    }
+
+    public Path getPath() { return path; }
+    public long getLastModified() { return lastModified; }
+    public long getSize() { return size; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FileStamp)) return false;
+        FileStamp that = (FileStamp) o;
+        return lastModified == that.lastModified && size == that.size && path.equals(that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, lastModified, size);
+    }
+
+    @Override
+    public String toString() {
+        return path + "@" + lastModified + "/" + size;
+    }
+}
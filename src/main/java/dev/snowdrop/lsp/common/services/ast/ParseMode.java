@@ -0,0 +1,21 @@
+package dev.snowdrop.lsp.common.services.ast;
+
+/**
+ * How much of a Java file the parser builds.
+ */
+public enum ParseMode {
+    /**
+     * Complete AST, including the statements of method and lambda bodies.
+     */
+    FULL,
+
+    /**
+     * Declarations only: types, fields, methods and their annotations. Method, constructor
+     * and lambda bodies are skipped and statements are not recovered, which makes parsing
+     * faster and the AST much smaller.
+     * <p>
+     * Annotations inside these bodies, such as annotations of local variables, of local or
+     * anonymous classes declared in a method or of lambda contents, are not found.
+     */
+    DECLARATIONS_ONLY
+}
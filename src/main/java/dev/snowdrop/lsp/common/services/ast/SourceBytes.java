@@ -0,0 +1,104 @@
+package dev.snowdrop.lsp.common.services.ast;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Byte-level access to Java source files, letting a file be read once, searched without
+ * decoding it and only decoded when it has to be parsed.
+ */
+public final class SourceBytes {
+
+    /**
+     * Files from this size are memory-mapped. Smaller files are read on the heap: mapping
+     * them would cost more system calls than the copy it saves, and mappings are only
+     * released by the garbage collector.
+     */
+    static final long MAPPING_THRESHOLD = 16 * 1024;
+
+    private SourceBytes() {
+    }
+
+    /**
+     * Read the content of a file.
+     *
+     * @param file The file to read
+     * @return A read-only buffer positioned at the start of the content
+     * @throws IOException If the file cannot be read
+     */
+    public static ByteBuffer read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAPPING_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full or the end of the file is reached
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Check whether the content contains the given bytes.
+     *
+     * @param content The content to search, left untouched
+     * @param pattern The bytes to find
+     * @return true if the pattern is found
+     */
+    public static boolean contains(ByteBuffer content, byte[] pattern) {
+        if (pattern.length == 0) {
+            return true;
+        }
+        byte first = pattern[0];
+        int limit = content.limit() - pattern.length;
+        for (int i = content.position(); i <= limit; i++) {
+            if (content.get(i) == first && matchesAt(content, i, pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decode UTF-8 content into the characters expected by the parser.
+     *
+     * @param content The content to decode, left untouched
+     * @return The decoded characters
+     */
+    public static char[] decode(ByteBuffer content) {
+        CharBuffer chars = StandardCharsets.UTF_8.decode(content.duplicate());
+        if (chars.hasArray() && chars.arrayOffset() == 0 && chars.remaining() == chars.array().length) {
+            return chars.array();
+        }
+        char[] array = new char[chars.remaining()];
+        chars.get(array);
+        return array;
+    }
+
+    /**
+     * Encode characters, such as the buffer of an open document, as UTF-8 content.
+     *
+     * @param chars The characters to encode, left untouched
+     * @return A read-only buffer of the encoded bytes
+     */
+    public static ByteBuffer encode(char[] chars) {
+        return StandardCharsets.UTF_8.encode(CharBuffer.wrap(chars)).asReadOnlyBuffer();
+    }
+
+    private static boolean matchesAt(ByteBuffer content, int offset, byte[] pattern) {
+        for (int j = 1; j < pattern.length; j++) {
+            if (content.get(offset + j) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,127 @@
+package dev.snowdrop.lsp.common.services.ast;
+
+import org.eclipse.jdt.core.dom.*;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SymbolInformation;
+import org.eclipse.lsp4j.SymbolKind;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * AST visitor collecting the declared types, annotation types, methods and fields of a compilation unit
+ * as workspace symbols. The container of a member is the name of its enclosing type.
+ * <p>
+ * As for jdt-ls, annotation types are reported with the {@link SymbolKind#Interface} kind.
+ */
+public class SymbolVisitor extends ASTVisitor {
+    private final CompilationUnit compilationUnit;
+    private final URI fileUri;
+    private final List<SymbolInformation> symbols = new ArrayList<>();
+    private final Deque<String> containers = new ArrayDeque<>();
+
+    public SymbolVisitor(CompilationUnit compilationUnit, URI fileUri) {
+        this.compilationUnit = compilationUnit;
+        this.fileUri = fileUri;
+    }
+
+    @Override
+    public boolean visit(TypeDeclaration node) {
+        return visitType(node, node.isInterface() ? SymbolKind.Interface : SymbolKind.Class);
+    }
+
+    @Override
+    public void endVisit(TypeDeclaration node) {
+        containers.pop();
+    }
+
+    @Override
+    public boolean visit(AnnotationTypeDeclaration node) {
+        return visitType(node, SymbolKind.Interface);
+    }
+
+    @Override
+    public void endVisit(AnnotationTypeDeclaration node) {
+        containers.pop();
+    }
+
+    @Override
+    public boolean visit(EnumDeclaration node) {
+        return visitType(node, SymbolKind.Enum);
+    }
+
+    @Override
+    public void endVisit(EnumDeclaration node) {
+        containers.pop();
+    }
+
+    @Override
+    public boolean visit(RecordDeclaration node) {
+        return visitType(node, SymbolKind.Class);
+    }
+
+    @Override
+    public void endVisit(RecordDeclaration node) {
+        containers.pop();
+    }
+
+    @Override
+    public boolean visit(MethodDeclaration node) {
+        addSymbol(node.getName(), node.isConstructor() ? SymbolKind.Constructor : SymbolKind.Method);
+        return false; // Local declarations are not workspace symbols
+    }
+
+    @Override
+    public boolean visit(AnnotationTypeMemberDeclaration node) {
+        addSymbol(node.getName(), SymbolKind.Method);
+        return false;
+    }
+
+    @Override
+    public boolean visit(FieldDeclaration node) {
+        for (Object fragment : node.fragments()) {
+            addSymbol(((VariableDeclarationFragment) fragment).getName(), SymbolKind.Field);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean visit(EnumConstantDeclaration node) {
+        addSymbol(node.getName(), SymbolKind.EnumMember);
+        return false;
+    }
+
+    @Override
+    public boolean visit(Initializer node) {
+        return false;
+    }
+
+    private boolean visitType(AbstractTypeDeclaration node, SymbolKind kind) {
+        addSymbol(node.getName(), kind);
+        containers.push(node.getName().getIdentifier());
+        return true;
+    }
+
+    private void addSymbol(SimpleName name, SymbolKind kind) {
+        Range range = new Range(toPosition(name.getStartPosition()), toPosition(name.getStartPosition() + name.getLength()));
+        SymbolInformation symbol = new SymbolInformation(name.getIdentifier(), kind, new Location(fileUri.toString(), range));
+        symbol.setContainerName(containers.peek());
+        symbols.add(symbol);
+    }
+
+    private Position toPosition(int astPosition) {
+        return new Position(compilationUnit.getLineNumber(astPosition) - 1, compilationUnit.getColumnNumber(astPosition));
+    }
+
+    /**
+     * Returns the symbols in declaration order.
+     */
+    public List<SymbolInformation> getSymbols() {
+        return symbols;
+    }
+}
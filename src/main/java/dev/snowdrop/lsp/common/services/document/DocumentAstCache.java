@@ -0,0 +1,51 @@
+package dev.snowdrop.lsp.common.services.document;
+
+import dev.snowdrop.lsp.common.services.ast.ASTParserPool;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parsed open documents, keyed by URI and version: requests received between two edits of a
+ * document share a single parse. Only the latest parsed version of a document is kept.
+ */
+public class DocumentAstCache {
+    private final Map<String, ParsedDocument> parsedDocuments = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the AST of the current version of a document, parsing it only when that version has
+     * not been parsed yet.
+     */
+    public CompilationUnit get(TextDocument document) {
+        // The version is read before the content: a change landing in between is cached under the
+        // older version and reparsed by the next request, never served for the newer one
+        int version = document.getVersion();
+        return parsedDocuments.compute(document.getUri(), (uri, parsed) -> {
+            if (parsed != null && parsed.getVersion() == version) {
+                return parsed;
+            }
+            return new ParsedDocument(version, ASTParserPool.getDefault().parse(document.getContent()));
+        }).getCompilationUnit();
+    }
+
+    /**
+     * Drop the AST of a document which has been closed.
+     */
+    public void invalidate(String uri) {
+        parsedDocuments.remove(uri);
+    }
+
+    private static class ParsedDocument {
+        private final int version;
+        private final CompilationUnit compilationUnit;
+
+        ParsedDocument(int version, CompilationUnit compilationUnit) {
+            this.version = version;
+            this.compilationUnit = compilationUnit;
+        }
+
+        int getVersion() { return version; }
+        CompilationUnit getCompilationUnit() { return compilationUnit; }
+    }
+}
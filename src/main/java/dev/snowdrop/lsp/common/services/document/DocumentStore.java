@@ -0,0 +1,102 @@
+package dev.snowdrop.lsp.common.services.document;
+
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Documents opened by the client, keyed by file path so that the workspace scans and indexes can
+ * read an open buffer in place of the file on disk.
+ * <p>
+ * The store also records the files whose buffer changed, was opened or closed since the last call to
+ * {@link #drainChangedFiles()}, letting the indexes catch up lazily when they are next queried rather
+ * than on every keystroke.
+ * <p>
+ * Documents which are not files, such as {@code untitled:} buffers or {@code jdt:} class files, are
+ * not part of the workspace and are ignored.
+ */
+public class DocumentStore {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentStore.class);
+
+    private final Map<Path, TextDocument> documents = new ConcurrentHashMap<>();
+    private final Set<Path> changedFiles = ConcurrentHashMap.newKeySet();
+
+    public void open(String uri, int version, String text) {
+        Path path = toPath(uri);
+        if (path == null) {
+            return;
+        }
+        documents.put(path, new TextDocument(uri, version, text));
+        changedFiles.add(path);
+    }
+
+    public void change(String uri, int version, List<TextDocumentContentChangeEvent> changes) {
+        Path path = toPath(uri);
+        if (path == null) {
+            return;
+        }
+        TextDocument document = documents.get(path);
+        if (document == null) {
+            logger.warn("SERVER: Ignoring change of document {} which is not open", uri);
+            return;
+        }
+        document.applyChanges(version, changes);
+        changedFiles.add(path);
+    }
+
+    public void close(String uri) {
+        Path path = toPath(uri);
+        if (path != null && documents.remove(path) != null) {
+            changedFiles.add(path);
+        }
+    }
+
+    /**
+     * Returns the open document of a URI, or null when it is not open or not a file.
+     */
+    public TextDocument get(String uri) {
+        Path path = toPath(uri);
+        return path == null ? null : documents.get(path);
+    }
+
+    /**
+     * Returns the open document of a file, or null when the file is not open.
+     */
+    public TextDocument get(Path path) {
+        return documents.get(path);
+    }
+
+    public boolean isOpen(Path path) {
+        return documents.containsKey(path);
+    }
+
+    /**
+     * Returns the files opened, changed or closed since the previous call, and forgets them.
+     */
+    public List<Path> drainChangedFiles() {
+        List<Path> drained = new ArrayList<>();
+        for (Iterator<Path> iterator = changedFiles.iterator(); iterator.hasNext(); ) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+
+    /**
+     * Returns the path of a {@code file:} URI, or null for any other scheme.
+     */
+    private static Path toPath(String uri) {
+        URI documentUri = URI.create(uri);
+        return "file".equals(documentUri.getScheme()) ? Paths.get(documentUri) : null;
+    }
+}
@@ -0,0 +1,296 @@
+package dev.snowdrop.lsp.common.services.document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Editable text stored as a piece table: the original text and an append-only buffer of the inserted
+ * text are never modified, the document being the sequence of pieces (slices of either buffer) listed
+ * in order. An edit splits or trims the pieces around the edited range and adds at most one piece, so
+ * its cost depends on the number of pieces and not on the size of the text.
+ * <p>
+ * Each piece caches its number of line breaks, and the table keeps the cumulative lengths and line
+ * breaks of its pieces, so that an offset or a line/character position is resolved by a binary search
+ * over the pieces and a scan of the piece holding the start of the line. The cumulative index is
+ * rebuilt by the first lookup following an edit. A line break is a {@code \n}, so {@code \r\n}
+ * counts as a single break.
+ */
+public class PieceTable {
+    private final String original;
+    private final StringBuilder added = new StringBuilder();
+    private final List<Piece> pieces = new ArrayList<>();
+    private int length;
+    // Offset following each piece and number of line breaks up to the end of each piece, null once edited
+    private int[] pieceEnds;
+    private int[] lineBreakEnds;
+
+    public PieceTable(String text) {
+        this.original = text;
+        this.length = text.length();
+        if (length > 0) {
+            pieces.add(new Piece(false, 0, length, countLineBreaks(text, 0, length)));
+        }
+    }
+
+    /**
+     * Returns the number of characters of the text.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Insert text at the given offset.
+     */
+    public void insert(int offset, String text) {
+        checkOffset(offset);
+        if (text.isEmpty()) {
+            return;
+        }
+        int start = added.length();
+        added.append(text);
+        int lineBreaks = countLineBreaks(added, start, start + text.length());
+
+        int index = splitAt(offset);
+        // Typing appends to the piece ending where the add buffer ends, keeping the table small
+        if (index > 0) {
+            Piece previous = pieces.get(index - 1);
+            if (previous.added && previous.start + previous.length == start) {
+                pieces.set(index - 1, new Piece(true, previous.start, previous.length + text.length(),
+                    previous.lineBreaks + lineBreaks));
+                length += text.length();
+                invalidateIndex();
+                return;
+            }
+        }
+        pieces.add(index, new Piece(true, start, text.length(), lineBreaks));
+        length += text.length();
+        invalidateIndex();
+    }
+
+    /**
+     * Delete the characters of the range [offset, offset + count).
+     */
+    public void delete(int offset, int count) {
+        checkOffset(offset);
+        if (count < 0 || offset + count > length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + count + " outside of text of length " + length);
+        }
+        if (count == 0) {
+            return;
+        }
+        int first = splitAt(offset);
+        int last = splitAt(offset + count);
+        pieces.subList(first, last).clear();
+        // Deleting a range inside a piece leaves its two halves apart, join them back when they are contiguous
+        if (first > 0 && first < pieces.size()) {
+            Piece previous = pieces.get(first - 1);
+            Piece next = pieces.get(first);
+            if (previous.added == next.added && previous.start + previous.length == next.start) {
+                pieces.set(first - 1, new Piece(previous.added, previous.start, previous.length + next.length,
+                    previous.lineBreaks + next.lineBreaks));
+                pieces.remove(first);
+            }
+        }
+        length -= count;
+        invalidateIndex();
+    }
+
+    /**
+     * Replace the characters of the range [start, end) with the given text.
+     */
+    public void replace(int start, int end, String text) {
+        delete(start, end - start);
+        insert(start, text);
+    }
+
+    /**
+     * Convert a zero-based line and character position into an offset. Positions past the end of a
+     * line or of the text are clamped, as LSP requires, the end of a line being before its {@code \r\n}
+     * or {@code \n}.
+     */
+    public int offsetAt(int line, int character) {
+        int lineStart = lineStart(line);
+        if (lineStart < 0) {
+            return length;
+        }
+        int lineEnd = lineStart(line + 1);
+        if (lineEnd < 0) {
+            lineEnd = length;
+        } else {
+            lineEnd--;
+            if (lineEnd > lineStart && charAt(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+        }
+        return (int) Math.min((long) lineStart + Math.max(0, character), lineEnd);
+    }
+
+    /**
+     * Returns the text as a new character array.
+     */
+    public char[] toCharArray() {
+        char[] chars = new char[length];
+        int position = 0;
+        for (Piece piece : pieces) {
+            if (piece.added) {
+                added.getChars(piece.start, piece.start + piece.length, chars, position);
+            } else {
+                original.getChars(piece.start, piece.start + piece.length, chars, position);
+            }
+            position += piece.length;
+        }
+        return chars;
+    }
+
+    @Override
+    public String toString() {
+        return new String(toCharArray());
+    }
+
+    /**
+     * Returns the offset of the first character of a line, or -1 when the text has fewer lines.
+     */
+    private int lineStart(int line) {
+        if (line <= 0) {
+            return 0;
+        }
+        buildIndex();
+        // The piece holding the line break ending the previous line
+        int low = 0;
+        int high = pieces.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (lineBreakEnds[middle] < line) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == pieces.size()) {
+            return -1;
+        }
+        Piece piece = pieces.get(low);
+        int remaining = line - (low == 0 ? 0 : lineBreakEnds[low - 1]);
+        for (int i = 0; i < piece.length; i++) {
+            if (bufferChar(piece, piece.start + i) == '\n' && --remaining == 0) {
+                return pieceStart(low) + i + 1;
+            }
+        }
+        throw new IllegalStateException("Line breaks of piece " + low + " out of date");
+    }
+
+    private char charAt(int offset) {
+        int index = pieceIndexAt(offset);
+        Piece piece = pieces.get(index);
+        return bufferChar(piece, piece.start + offset - pieceStart(index));
+    }
+
+    /**
+     * Split the piece containing the offset so that a piece starts at it.
+     *
+     * @return The index of the piece starting at the offset, or the number of pieces at the end of the text
+     */
+    private int splitAt(int offset) {
+        int index = pieceIndexAt(offset);
+        if (index == pieces.size()) {
+            return index;
+        }
+        int pieceStart = pieceStart(index);
+        if (offset == pieceStart) {
+            return index;
+        }
+        Piece piece = pieces.get(index);
+        int headLength = offset - pieceStart;
+        CharSequence buffer = piece.added ? added : original;
+        int headBreaks = countLineBreaks(buffer, piece.start, piece.start + headLength);
+        pieces.set(index, new Piece(piece.added, piece.start, headLength, headBreaks));
+        pieces.add(index + 1, new Piece(piece.added, piece.start + headLength,
+            piece.length - headLength, piece.lineBreaks - headBreaks));
+        invalidateIndex();
+        return index + 1;
+    }
+
+    /**
+     * Returns the index of the piece containing the offset, or the number of pieces at the end of the text.
+     */
+    private int pieceIndexAt(int offset) {
+        buildIndex();
+        int low = 0;
+        int high = pieces.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (pieceEnds[middle] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int pieceStart(int index) {
+        return index == 0 ? 0 : pieceEnds[index - 1];
+    }
+
+    private void buildIndex() {
+        if (pieceEnds != null) {
+            return;
+        }
+        int[] ends = new int[pieces.size()];
+        int[] breaks = new int[pieces.size()];
+        int end = 0;
+        int lineBreaks = 0;
+        for (int index = 0; index < ends.length; index++) {
+            Piece piece = pieces.get(index);
+            end += piece.length;
+            lineBreaks += piece.lineBreaks;
+            ends[index] = end;
+            breaks[index] = lineBreaks;
+        }
+        pieceEnds = ends;
+        lineBreakEnds = breaks;
+    }
+
+    private void invalidateIndex() {
+        pieceEnds = null;
+        lineBreakEnds = null;
+    }
+
+    private char bufferChar(Piece piece, int index) {
+        return piece.added ? added.charAt(index) : original.charAt(index);
+    }
+
+    private void checkOffset(int offset) {
+        if (offset < 0 || offset > length) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " outside of text of length " + length);
+        }
+    }
+
+    private static int countLineBreaks(CharSequence text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A slice of the original or of the add buffer.
+     */
+    private static class Piece {
+        private final boolean added;
+        private final int start;
+        private final int length;
+        private final int lineBreaks;
+
+        Piece(boolean added, int start, int length, int lineBreaks) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+            this.lineBreaks = lineBreaks;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package dev.snowdrop.lsp.common.services.document;
+
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+
+import java.util.List;
+
+/**
+ * An open document: the text of the editor buffer, which may differ from the file on disk, and the
+ * version of the last change applied by the client.
+ * <p>
+ * Edits and reads are synchronized, as changes are applied by the message thread while workspace
+ * searches read the content from their own threads.
+ */
+public class TextDocument {
+    private final String uri;
+    private PieceTable text;
+    private int version;
+    // Decoded content of the current version, built on the first read after a change
+    private char[] snapshot;
+
+    public TextDocument(String uri, int version, String text) {
+        this.uri = uri;
+        this.version = version;
+        this.text = new PieceTable(text);
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     * Apply the changes sent by a {@code textDocument/didChange} notification, in order. A change
+     * without range replaces the whole text.
+     *
+     * @param version The version of the document after the changes
+     * @param changes The incremental or full content changes
+     */
+    public synchronized void applyChanges(int version, List<TextDocumentContentChangeEvent> changes) {
+        for (TextDocumentContentChangeEvent change : changes) {
+            Range range = change.getRange();
+            if (range == null) {
+                text = new PieceTable(change.getText());
+            } else {
+                text.replace(offsetAt(range.getStart()), offsetAt(range.getEnd()), change.getText());
+            }
+        }
+        this.version = version;
+        this.snapshot = null;
+    }
+
+    /**
+     * Returns the current text. The array is shared by the readers of the same version and must not be modified.
+     */
+    public synchronized char[] getContent() {
+        if (snapshot == null) {
+            snapshot = text.toCharArray();
+        }
+        return snapshot;
+    }
+
+    private int offsetAt(Position position) {
+        return text.offsetAt(position.getLine(), position.getCharacter());
+    }
+}
@@ -0,0 +1,148 @@
+package dev.snowdrop.lsp.common.services.index;
+
+import dev.snowdrop.lsp.common.services.ast.AnnotationVisitor;
+import dev.snowdrop.lsp.common.services.ast.ParseMode;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.lsp4j.Location;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Inverted index of the annotations of a workspace, mapping an annotation simple name
+ * to the locations where it is used.
+ * <p>
+ * Locations are kept per file, files being ordered by path, so a lookup returns them
+ * in the same order as a scan of the workspace. The index is built from complete ASTs and
+ * remembers which annotations sit in method bodies, so it can also answer
+ * {@link ParseMode#DECLARATIONS_ONLY} searches.
+ */
+public class AnnotationIndex {
+    private final Map<String, ConcurrentSkipListMap<Path, List<Location>>> locationsByAnnotation = new ConcurrentHashMap<>();
+    private final Map<Path, Set<String>> annotationsByFile = new ConcurrentHashMap<>();
+    private final Map<Path, Set<Location>> bodyLocationsByFile = new ConcurrentHashMap<>();
+
+    /**
+     * Find the locations of an annotation.
+     *
+     * @param annotationName The annotation simple name (without @)
+     * @return The locations, ordered by file path then position
+     */
+    public List<Location> find(String annotationName) {
+        return find(annotationName, ParseMode.FULL);
+    }
+
+    /**
+     * Find the locations of an annotation, as a scan parsing in the given mode would.
+     *
+     * @param annotationName The annotation simple name (without @)
+     * @param mode The parse mode of the search
+     * @return The locations, ordered by file path then position
+     */
+    public List<Location> find(String annotationName, ParseMode mode) {
+        Map<Path, List<Location>> locationsByFile = locationsByAnnotation.get(annotationName);
+        if (locationsByFile == null) {
+            return Collections.emptyList();
+        }
+        List<Location> locations = new ArrayList<>();
+        for (Map.Entry<Path, List<Location>> fileLocations : locationsByFile.entrySet()) {
+            if (mode == ParseMode.DECLARATIONS_ONLY) {
+                Set<Location> bodyLocations = bodyLocationsByFile.getOrDefault(fileLocations.getKey(), Collections.emptySet());
+                for (Location location : fileLocations.getValue()) {
+                    if (!bodyLocations.contains(location)) {
+                        locations.add(location);
+                    }
+                }
+            } else {
+                locations.addAll(fileLocations.getValue());
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Index the annotations of a compilation unit, replacing the previous ones of the file.
+     *
+     * @param file The Java file
+     * @param compilationUnit The parsed file
+     */
+    public void add(Path file, CompilationUnit compilationUnit) {
+        IndexedFile indexedFile = collect(file, compilationUnit);
+        synchronized (this) {
+            remove(file);
+            put(indexedFile);
+        }
+    }
+
+    /**
+     * Drop the entries of a file which has been deleted.
+     *
+     * @param file The Java file
+     */
+    public synchronized void remove(Path file) {
+        Set<String> annotationNames = annotationsByFile.remove(file);
+        bodyLocationsByFile.remove(file);
+        if (annotationNames == null) {
+            return;
+        }
+        for (String annotationName : annotationNames) {
+            locationsByAnnotation.computeIfPresent(annotationName, (name, locationsByFile) -> {
+                locationsByFile.remove(file);
+                return locationsByFile.isEmpty() ? null : locationsByFile;
+            });
+        }
+    }
+
+    /**
+     * Returns the number of files containing at least one annotation.
+     */
+    public int getFileCount() {
+        return annotationsByFile.size();
+    }
+
+    private synchronized void put(IndexedFile file) {
+        if (file.getLocationsByName().isEmpty()) {
+            return;
+        }
+        annotationsByFile.put(file.getPath(), file.getLocationsByName().keySet());
+        if (!file.getBodyLocations().isEmpty()) {
+            bodyLocationsByFile.put(file.getPath(), file.getBodyLocations());
+        }
+        for (Map.Entry<String, List<Location>> entry : file.getLocationsByName().entrySet()) {
+            locationsByAnnotation
+                .computeIfAbsent(entry.getKey(), name -> new ConcurrentSkipListMap<>())
+                .put(file.getPath(), entry.getValue());
+        }
+    }
+
+    private static IndexedFile collect(Path file, CompilationUnit compilationUnit) {
+        AnnotationVisitor visitor = AnnotationVisitor.forAllAnnotations(compilationUnit, file.toUri());
+        compilationUnit.accept(visitor);
+        return new IndexedFile(file, visitor.getLocationsByName(), visitor.getBodyLocations());
+    }
+
+    /**
+     * Annotations found in one file.
+     */
+    private static class IndexedFile {
+        private final Path path;
+        private final Map<String, List<Location>> locationsByName;
+        private final Set<Location> bodyLocations;
+
+        IndexedFile(Path path, Map<String, List<Location>> locationsByName, Set<Location> bodyLocations) {
+            this.path = path;
+            this.locationsByName = locationsByName;
+            this.bodyLocations = bodyLocations;
+        }
+
+        Path getPath() { return path; }
+        Map<String, List<Location>> getLocationsByName() { return locationsByName; }
+        Set<Location> getBodyLocations() { return bodyLocations; }
+    }
+}
@@ -0,0 +1,222 @@
+package dev.snowdrop.lsp.common.services.index;
+
+import dev.snowdrop.lsp.common.services.ast.SymbolVisitor;
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.lsp4j.SymbolInformation;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the types, annotation types, methods and fields declared in a workspace, answering
+ * {@code workspace/symbol} queries.
+ * <p>
+ * A symbol matches a query when its name equals it, starts with it (ignoring case) or matches it as
+ * a camel-case pattern ({@code MSA} or {@code MySeAn} for {@code MySearchableAnnotation}). Matches are
+ * ranked in that order, shorter names first, and only the best ones are kept in a bounded heap so that
+ * a query matching most of the workspace never sorts all of it.
+ * <p>
+ * As every match kind anchors the query at the start of the name, the symbols are bucketed by the
+ * lower case first character of their name and a query only walks the bucket of its first character.
+ */
+public class SymbolIndex {
+    public static final int DEFAULT_MAX_RESULTS = 100;
+
+    private static final int EXACT_MATCH = 4000;
+    private static final int EXACT_IGNORE_CASE_MATCH = 3000;
+    private static final int PREFIX_MATCH = 2000;
+    private static final int CAMEL_CASE_MATCH = 1000;
+
+    // Worst match first: lower score, then later name, then later URI
+    private static final Comparator<ScoredSymbol> RANKING = SymbolIndex::compareRanks;
+
+    private final Map<Character, Map<Path, List<Entry>>> entriesByFirstChar = new ConcurrentHashMap<>();
+    private final Map<Path, Set<Character>> firstCharsByFile = new ConcurrentHashMap<>();
+    private final int maxResults;
+
+    public SymbolIndex() {
+        this(DEFAULT_MAX_RESULTS);
+    }
+
+    /**
+     * @param maxResults The maximum number of symbols returned by a query
+     */
+    public SymbolIndex(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Index the symbols declared in a compilation unit, replacing the previous ones of the file.
+     *
+     * @param file The Java file
+     * @param compilationUnit The parsed file
+     */
+    public void add(Path file, CompilationUnit compilationUnit) {
+        SymbolVisitor visitor = new SymbolVisitor(compilationUnit, file.toUri());
+        compilationUnit.accept(visitor);
+        Map<Character, List<Entry>> fileEntries = new HashMap<>();
+        for (SymbolInformation symbol : visitor.getSymbols()) {
+            Entry entry = new Entry(symbol);
+            fileEntries.computeIfAbsent(entry.getLowerFirstChar(), c -> new ArrayList<>()).add(entry);
+        }
+        synchronized (this) {
+            remove(file);
+            firstCharsByFile.put(file, fileEntries.keySet());
+            fileEntries.forEach((firstChar, entries) ->
+                entriesByFirstChar.computeIfAbsent(firstChar, c -> new ConcurrentHashMap<>()).put(file, entries));
+        }
+    }
+
+    /**
+     * Drop the symbols of a file which has been deleted.
+     */
+    public synchronized void remove(Path file) {
+        Set<Character> firstChars = firstCharsByFile.remove(file);
+        if (firstChars == null) {
+            return;
+        }
+        for (Character firstChar : firstChars) {
+            Map<Path, List<Entry>> bucket = entriesByFirstChar.get(firstChar);
+            if (bucket != null) {
+                bucket.remove(file);
+            }
+        }
+    }
+
+    /**
+     * Find the symbols matching a query, best matches first.
+     *
+     * @param query The name, name prefix or camel-case pattern searched; an empty query matches all the symbols
+     * @return At most {@code maxResults} symbols
+     */
+    public List<SymbolInformation> search(String query) {
+        char[] pattern = query.toCharArray();
+        Collection<Map<Path, List<Entry>>> buckets;
+        if (pattern.length == 0) {
+            buckets = entriesByFirstChar.values();
+        } else {
+            Map<Path, List<Entry>> bucket = entriesByFirstChar.get(Character.toLowerCase(pattern[0]));
+            buckets = bucket == null ? List.of() : List.of(bucket);
+        }
+
+        // Min-heap of the best matches: the worst kept match is evicted by any better one
+        PriorityQueue<ScoredSymbol> best = new PriorityQueue<>(maxResults + 1, RANKING);
+        for (Map<Path, List<Entry>> bucket : buckets) {
+            for (List<Entry> entries : bucket.values()) {
+                for (Entry entry : entries) {
+                    int score = score(pattern, query, entry);
+                    if (score >= 0) {
+                        offer(best, score, entry);
+                    }
+                }
+            }
+        }
+
+        List<SymbolInformation> symbols = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            symbols.add(best.poll().getEntry().getSymbol());
+        }
+        Collections.reverse(symbols);
+        return symbols;
+    }
+
+    /**
+     * Returns the number of indexed symbols.
+     */
+    public int size() {
+        return entriesByFirstChar.values().stream()
+            .flatMap(bucket -> bucket.values().stream())
+            .mapToInt(List::size)
+            .sum();
+    }
+
+    private void offer(PriorityQueue<ScoredSymbol> best, int score, Entry entry) {
+        if (best.size() < maxResults) {
+            best.add(new ScoredSymbol(score, entry));
+        } else if (score >= best.peek().getScore()) {
+            // Only a match ranking above the worst kept one is allocated and inserted
+            ScoredSymbol scored = new ScoredSymbol(score, entry);
+            if (RANKING.compare(scored, best.peek()) > 0) {
+                best.poll();
+                best.add(scored);
+            }
+        }
+    }
+
+    private static int compareRanks(ScoredSymbol first, ScoredSymbol second) {
+        if (first.getScore() != second.getScore()) {
+            return Integer.compare(first.getScore(), second.getScore());
+        }
+        SymbolInformation firstSymbol = first.getEntry().getSymbol();
+        SymbolInformation secondSymbol = second.getEntry().getSymbol();
+        int byName = secondSymbol.getName().compareTo(firstSymbol.getName());
+        if (byName != 0) {
+            return byName;
+        }
+        return secondSymbol.getLocation().getUri().compareTo(firstSymbol.getLocation().getUri());
+    }
+
+    private static int score(char[] pattern, String query, Entry entry) {
+        String name = entry.getSymbol().getName();
+        // Shorter names rank first among matches of the same kind
+        int lengthPenalty = Math.max(0, Math.min(name.length() - pattern.length, 999));
+        if (pattern.length == 0) {
+            return CAMEL_CASE_MATCH - lengthPenalty;
+        }
+        if (name.equals(query)) {
+            return EXACT_MATCH;
+        }
+        if (name.equalsIgnoreCase(query)) {
+            return EXACT_IGNORE_CASE_MATCH;
+        }
+        if (name.regionMatches(true, 0, query, 0, pattern.length)) {
+            return PREFIX_MATCH - lengthPenalty;
+        }
+        if (CharOperation.camelCaseMatch(pattern, entry.getNameChars())) {
+            return CAMEL_CASE_MATCH - lengthPenalty;
+        }
+        return -1;
+    }
+
+    /**
+     * An indexed symbol with the data precomputed for matching.
+     */
+    private static class Entry {
+        private final SymbolInformation symbol;
+        private final char[] nameChars;
+        private final char lowerFirstChar;
+
+        Entry(SymbolInformation symbol) {
+            this.symbol = symbol;
+            this.nameChars = symbol.getName().toCharArray();
+            this.lowerFirstChar = nameChars.length > 0 ? Character.toLowerCase(nameChars[0]) : 0;
+        }
+
+        SymbolInformation getSymbol() { return symbol; }
+        char[] getNameChars() { return nameChars; }
+        char getLowerFirstChar() { return lowerFirstChar; }
+    }
+
+    private static class ScoredSymbol {
+        private final int score;
+        private final Entry entry;
+
+        ScoredSymbol(int score, Entry entry) {
+            this.score = score;
+            this.entry = entry;
+        }
+
+        int getScore() { return score; }
+        Entry getEntry() { return entry; }
+    }
+}
@@ -0,0 +1,109 @@
+package dev.snowdrop.lsp.common.services.index;
+
+import dev.snowdrop.lsp.common.services.ast.ASTParserPool;
+import dev.snowdrop.lsp.common.services.ast.CompilationUnitCache;
+import dev.snowdrop.lsp.common.services.ast.ParseMode;
+import dev.snowdrop.lsp.common.services.document.DocumentStore;
+import dev.snowdrop.lsp.common.services.scan.ScanOptions;
+import dev.snowdrop.lsp.common.services.scan.ScanPipeline;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Indexes of a workspace built by a single parse of its Java files: the annotation index
+ * serving {@code java/findAnnotatedClasses} and the symbol index serving {@code workspace/symbol}.
+ * <p>
+ * The files are parsed through the shared {@link CompilationUnitCache}, so that a file reported as changed
+ * with the same content, such as after a checkout or a formatter run, is not parsed again.
+ */
+public class WorkspaceIndex {
+    private static final Logger logger = LoggerFactory.getLogger(WorkspaceIndex.class);
+
+    private final AnnotationIndex annotationIndex = new AnnotationIndex();
+    private final SymbolIndex symbolIndex = new SymbolIndex();
+
+    /**
+     * Build the indexes of all the Java files under the given root.
+     *
+     * @param root The workspace root directory
+     * @param options The sizing of the scan pipeline
+     * @return The populated indexes
+     * @throws IOException If the workspace cannot be walked
+     */
+    public static WorkspaceIndex build(Path root, ScanOptions options) throws IOException {
+        return build(root, options, null);
+    }
+
+    /**
+     * Build the indexes of all the Java files under the given root, reading the open documents from their buffer.
+     *
+     * @param root The workspace root directory
+     * @param options The sizing of the scan pipeline
+     * @param documentStore The open documents, or null to read all the files from disk
+     * @return The populated indexes
+     * @throws IOException If the workspace cannot be walked
+     */
+    public static WorkspaceIndex build(Path root, ScanOptions options, DocumentStore documentStore) throws IOException {
+        long start = System.nanoTime();
+        WorkspaceIndex index = new WorkspaceIndex();
+        ScanPipeline pipeline = new ScanPipeline(options, documentStore);
+        // The files reindexed later with the same content are served by the cache
+        pipeline.setCompilationUnitCache(CompilationUnitCache.getDefault());
+        // Every file declares symbols, so none is pre-filtered out
+        pipeline.scan(root, source -> true, ParseMode.FULL, (source, compilationUnit) -> {
+            index.add(source.getPath(), compilationUnit);
+            return List.of();
+        });
+        logger.info("SERVER: Indexed {} annotated files and {} symbols in {} ms",
+            index.annotationIndex.getFileCount(), index.symbolIndex.size(), (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    /**
+     * Reindex a file after it has been created or modified.
+     *
+     * @param file The Java file
+     * @throws IOException If the file cannot be read
+     */
+    public void update(Path file) throws IOException {
+        add(file, CompilationUnitCache.getDefault().parse(file, ParseMode.FULL));
+    }
+
+    /**
+     * Reindex a file from the given content, such as the buffer of an open document.
+     *
+     * @param file The Java file
+     * @param content The current content of the file
+     */
+    public void update(Path file, char[] content) {
+        add(file, ASTParserPool.getDefault().parse(content));
+    }
+
+    /**
+     * Drop the entries of a file which has been deleted.
+     *
+     * @param file The Java file
+     */
+    public void remove(Path file) {
+        annotationIndex.remove(file);
+        symbolIndex.remove(file);
+    }
+
+    public AnnotationIndex getAnnotationIndex() {
+        return annotationIndex;
+    }
+
+    public SymbolIndex getSymbolIndex() {
+        return symbolIndex;
+    }
+
+    private void add(Path file, CompilationUnit compilationUnit) {
+        annotationIndex.add(file, compilationUnit);
+        symbolIndex.add(file, compilationUnit);
+    }
+}
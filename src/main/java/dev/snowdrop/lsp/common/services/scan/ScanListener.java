@@ -0,0 +1,28 @@
+package dev.snowdrop.lsp.common.services.scan;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Observer of the progress of a {@link ScanPipeline} scan, notified while the scan runs rather than
+ * when it completes. Methods are called concurrently by the threads of the stages.
+ */
+public interface ScanListener<T> {
+
+    /**
+     * Called once all the Java files under the root have been listed.
+     *
+     * @param fileCount The number of files to scan
+     */
+    default void onWalkCompleted(int fileCount) {
+    }
+
+    /**
+     * Called when a file has been scanned, including the files discarded by the pre-filter.
+     *
+     * @param path The scanned file
+     * @param results The results of the file, empty when it has none
+     */
+    default void onFileCompleted(Path path, List<T> results) {
+    }
+}
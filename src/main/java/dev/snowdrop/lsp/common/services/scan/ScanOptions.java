@@ -0,0 +1,37 @@
+package dev.snowdrop.lsp.common.services.scan;
+
+/**
+ * Sizing of the workspace scan pipeline stages.
+ */
+public class ScanOptions {
+    private final int readerThreads;
+    private final int parserThreads;
+    private final int queueCapacity;
+
+    /**
+     * @param readerThreads Number of threads reading and pre-filtering files
+     * @param parserThreads Number of threads parsing and visiting files
+     * @param queueCapacity Capacity of each queue joining two stages
+     */
+    public ScanOptions(int readerThreads, int parserThreads, int queueCapacity) {
+        if (readerThreads < 1 || parserThreads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Scan threads and queue capacity must be at least 1");
+        }
+        this.readerThreads = readerThreads;
+        this.parserThreads = parserThreads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Options sized for the current machine: I/O threads are kept few as reads are cheap
+     * compared to parsing, which gets one thread per processor.
+     */
+    public static ScanOptions defaults() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return new ScanOptions(Math.max(2, processors / 4), processors, 256);
+    }
+
+    public int getReaderThreads() { return readerThreads; }
+    public int getParserThreads() { return parserThreads; }
+    public int getQueueCapacity() { return queueCapacity; }
+}
@@ -0,0 +1,351 @@
+package dev.snowdrop.lsp.common.services.scan;
+
+import dev.snowdrop.lsp.common.services.ast.ASTParserPool;
+import dev.snowdrop.lsp.common.services.ast.CompilationUnitCache;
+import dev.snowdrop.lsp.common.services.ast.FileStamp;
+import dev.snowdrop.lsp.common.services.ast.ParseMode;
+import dev.snowdrop.lsp.common.services.ast.SourceBytes;
+import dev.snowdrop.lsp.common.services.document.DocumentStore;
+import dev.snowdrop.lsp.common.services.document.TextDocument;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Staged pipeline scanning the Java files of a workspace.
+ * <p>
+ * The stages are: walk (one thread listing the {@code .java} files), read and pre-filter
+ * (I/O threads loading the content and discarding the files which cannot match) and
+ * parse and visit (CPU threads building the AST and extracting the results).
+ * Stages are joined by bounded queues so that reading overlaps parsing while the number
+ * of files held in memory stays constant whatever the size of the workspace.
+ * <p>
+ * Results are sorted by file path, keeping the visit order within a file, so a scan
+ * always returns them in the same order. A {@link ScanListener} receives them earlier,
+ * file by file in the order the files complete.
+ * <p>
+ * When a document store is given, the files open in the client are read from their buffer
+ * rather than from disk, so that unsaved changes are searched. When a compilation unit cache is
+ * set, the files read from disk are parsed only if their content was not parsed yet.
+ */
+public class ScanPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(ScanPipeline.class);
+
+    // Markers telling a stage that the upstream stage has completed
+    private static final Path END_OF_PATHS = Path.of("");
+    private static final SourceFile END_OF_SOURCES = new SourceFile(END_OF_PATHS, ByteBuffer.allocate(0));
+
+    private final ScanOptions options;
+    private final DocumentStore documentStore;
+    private CompilationUnitCache compilationUnitCache;
+
+    public ScanPipeline(ScanOptions options) {
+        this(options, null);
+    }
+
+    /**
+     * @param options The sizing of the stages
+     * @param documentStore The open documents read in place of their file, or null to read all the files from disk
+     */
+    public ScanPipeline(ScanOptions options, DocumentStore documentStore) {
+        this.options = options;
+        this.documentStore = documentStore;
+    }
+
+    /**
+     * Reuse the ASTs of the unchanged files from the given cache, and cache the ones parsed by the scans.
+     */
+    public void setCompilationUnitCache(CompilationUnitCache compilationUnitCache) {
+        this.compilationUnitCache = compilationUnitCache;
+    }
+
+    /**
+     * Scan the Java files under the given root.
+     *
+     * @param root The directory to scan
+     * @param prefilter Check run on the file content, returning false when the file cannot contain a result
+     * @param visitor Function extracting the results from a parsed file
+     * @return The results of all the files, ordered by file path
+     * @throws IOException If the workspace cannot be walked
+     */
+    public <T> List<T> scan(Path root, Predicate<SourceFile> prefilter,
+                            BiFunction<SourceFile, CompilationUnit, List<T>> visitor) throws IOException {
+        return scan(root, prefilter, ParseMode.FULL, visitor);
+    }
+
+    /**
+     * Scan the Java files under the given root.
+     *
+     * @param root The directory to scan
+     * @param prefilter Check run on the file content, returning false when the file cannot contain a result
+     * @param mode Whether method bodies are parsed
+     * @param visitor Function extracting the results from a parsed file
+     * @return The results of all the files, ordered by file path
+     * @throws IOException If the workspace cannot be walked
+     */
+    public <T> List<T> scan(Path root, Predicate<SourceFile> prefilter, ParseMode mode,
+                            BiFunction<SourceFile, CompilationUnit, List<T>> visitor) throws IOException {
+        return scan(root, prefilter, mode, visitor, new ScanListener<>() { });
+    }
+
+    /**
+     * Scan the Java files under the given root, reporting the results of every file as soon as it is scanned.
+     *
+     * @param root The directory to scan
+     * @param prefilter Check run on the file content, returning false when the file cannot contain a result
+     * @param mode Whether method bodies are parsed
+     * @param visitor Function extracting the results from a parsed file
+     * @param listener Notified of the files listed and scanned, in the order they complete
+     * @return The results of all the files, ordered by file path
+     * @throws IOException If the workspace cannot be walked
+     */
+    public <T> List<T> scan(Path root, Predicate<SourceFile> prefilter, ParseMode mode,
+                            BiFunction<SourceFile, CompilationUnit, List<T>> visitor, ScanListener<T> listener) throws IOException {
+        return scan(root, prefilter, mode, visitor, listener, () -> false);
+    }
+
+    /**
+     * Scan the Java files under the given root until the scan completes or is stopped.
+     * The stop condition is checked by every stage before each file: once it is true, the files not read or
+     * parsed yet are skipped, and the results of the files already scanned are returned.
+     *
+     * @param root The directory to scan
+     * @param prefilter Check run on the file content, returning false when the file cannot contain a result
+     * @param mode Whether method bodies are parsed
+     * @param visitor Function extracting the results from a parsed file
+     * @param listener Notified of the files listed and scanned, in the order they complete
+     * @param stopRequested Returns true when the scan must stop, such as when its request was cancelled
+     * @return The results of the files scanned, ordered by file path
+     * @throws IOException If the workspace cannot be walked
+     */
+    public <T> List<T> scan(Path root, Predicate<SourceFile> prefilter, ParseMode mode,
+                            BiFunction<SourceFile, CompilationUnit, List<T>> visitor, ScanListener<T> listener,
+                            BooleanSupplier stopRequested) throws IOException {
+        return run(root, prefilter, listener, stopRequested, source -> {
+            CompilationUnit compilationUnit = compilationUnitCache != null && source.getStamp() != null
+                ? compilationUnitCache.parse(source.getStamp(), source.getContent(), source::toChars, mode)
+                : ASTParserPool.getDefault().parse(source.toChars(), mode);
+            return visitor.apply(source, compilationUnit);
+        });
+    }
+
+    /**
+     * List the Java files under the given root which pass the pre-filter, without parsing them.
+     * Lets the candidates be handed to another parsing strategy such as a batch parser.
+     *
+     * @param root The directory to scan
+     * @param prefilter Check run on the file content, returning false when the file cannot contain a result
+     * @return The candidate files, ordered by path
+     * @throws IOException If the workspace cannot be walked
+     */
+    public List<Path> findCandidates(Path root, Predicate<SourceFile> prefilter) throws IOException {
+        return run(root, prefilter, new ScanListener<>() { }, () -> false, source -> List.of(source.getPath()));
+    }
+
+    private <T> List<T> run(Path root, Predicate<SourceFile> prefilter, ScanListener<T> listener,
+                            BooleanSupplier stopRequested, Function<SourceFile, List<T>> processor) throws IOException {
+        BlockingQueue<Path> paths = new ArrayBlockingQueue<>(options.getQueueCapacity());
+        BlockingQueue<SourceFile> sources = new ArrayBlockingQueue<>(options.getQueueCapacity());
+        ConcurrentLinkedQueue<FileResult<T>> collector = new ConcurrentLinkedQueue<>();
+        AtomicInteger activeReaders = new AtomicInteger(options.getReaderThreads());
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            1 + options.getReaderThreads() + options.getParserThreads(), ScanPipeline::newStageThread);
+        // The stages are awaited in the order they complete, so that the first failure stops the scan: the other
+        // stages, blocked on a queue the failed stage no longer feeds or drains, are then interrupted
+        CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+        int stageCount = 1 + options.getReaderThreads() + options.getParserThreads();
+        try {
+            stages.submit(stage(() -> walk(root, paths, listener, stopRequested)));
+            for (int i = 0; i < options.getReaderThreads(); i++) {
+                stages.submit(stage(() -> read(paths, sources, prefilter, activeReaders, listener, stopRequested)));
+            }
+            for (int i = 0; i < options.getParserThreads(); i++) {
+                stages.submit(stage(() -> process(sources, processor, collector, listener, stopRequested)));
+            }
+            for (int i = 0; i < stageCount; i++) {
+                stages.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Scan of " + root + " interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Scan of " + root + " failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<FileResult<T>> fileResults = new ArrayList<>(collector);
+        fileResults.sort(Comparator.comparing(FileResult::getPath));
+        List<T> results = new ArrayList<>();
+        for (FileResult<T> fileResult : fileResults) {
+            results.addAll(fileResult.getResults());
+        }
+        return results;
+    }
+
+    private void walk(Path root, BlockingQueue<Path> paths, ScanListener<?> listener,
+                      BooleanSupplier stopRequested) throws IOException, InterruptedException {
+        try (Stream<Path> files = Files.walk(root)) {
+            int fileCount = 0;
+            for (Path path : (Iterable<Path>) files::iterator) {
+                if (stopRequested.getAsBoolean()) {
+                    break;
+                }
+                if (path.toString().endsWith(".java") && Files.isRegularFile(path)) {
+                    paths.put(path);
+                    fileCount++;
+                }
+            }
+            listener.onWalkCompleted(fileCount);
+        } finally {
+            for (int i = 0; i < options.getReaderThreads(); i++) {
+                paths.put(END_OF_PATHS);
+            }
+        }
+    }
+
+    private <T> void read(BlockingQueue<Path> paths, BlockingQueue<SourceFile> sources,
+                          Predicate<SourceFile> prefilter, AtomicInteger activeReaders,
+                          ScanListener<T> listener, BooleanSupplier stopRequested) throws InterruptedException {
+        try {
+            Path path;
+            while ((path = paths.take()) != END_OF_PATHS) {
+                if (stopRequested.getAsBoolean()) {
+                    // Keep taking the paths so that the walker is not blocked on a full queue
+                    continue;
+                }
+                SourceFile source = null;
+                try {
+                    SourceFile candidate = readSource(path);
+                    if (prefilter.test(candidate)) {
+                        source = candidate;
+                    }
+                } catch (IOException e) {
+                    logger.error("SERVER: Failed to read file {}", path, e);
+                } catch (Throwable e) {
+                    // Such as an InternalError raised by a file truncated while it is mapped
+                    rethrowIfFatal(e);
+                    logger.error("SERVER: Failed to read file {}", path, e);
+                }
+                if (source != null) {
+                    sources.put(source);
+                } else {
+                    listener.onFileCompleted(path, List.of());
+                }
+            }
+        } finally {
+            // The last reader to complete tells the parsers that no more sources will come
+            if (activeReaders.decrementAndGet() == 0) {
+                for (int i = 0; i < options.getParserThreads(); i++) {
+                    sources.put(END_OF_SOURCES);
+                }
+            }
+        }
+    }
+
+    private SourceFile readSource(Path path) throws IOException {
+        TextDocument document = documentStore == null ? null : documentStore.get(path);
+        if (document != null) {
+            char[] chars = document.getContent();
+            return new SourceFile(path, SourceBytes.encode(chars), chars, null);
+        }
+        if (compilationUnitCache == null) {
+            return new SourceFile(path, SourceBytes.read(path));
+        }
+        FileStamp stamp = FileStamp.of(path);
+        return new SourceFile(path, SourceBytes.read(path), null, stamp);
+    }
+
+    private <T> void process(BlockingQueue<SourceFile> sources, Function<SourceFile, List<T>> processor,
+                             ConcurrentLinkedQueue<FileResult<T>> collector, ScanListener<T> listener,
+                             BooleanSupplier stopRequested) throws InterruptedException {
+        SourceFile source;
+        while ((source = sources.take()) != END_OF_SOURCES) {
+            if (stopRequested.getAsBoolean()) {
+                continue;
+            }
+            List<T> results = List.of();
+            try {
+                results = processor.apply(source);
+                if (!results.isEmpty()) {
+                    collector.add(new FileResult<>(source.getPath(), results));
+                }
+            } catch (Throwable e) {
+                // Such as a StackOverflowError raised by JDT on deeply nested code, which only fails this file
+                rethrowIfFatal(e);
+                logger.error("SERVER: Failed to parse file {}", source.getPath(), e);
+            }
+            listener.onFileCompleted(source.getPath(), results);
+        }
+    }
+
+    /**
+     * Rethrow the errors after which the JVM cannot be trusted to scan the other files, failing the scan.
+     */
+    private static void rethrowIfFatal(Throwable e) {
+        if (e instanceof OutOfMemoryError) {
+            throw (OutOfMemoryError) e;
+        }
+    }
+
+    private static Callable<Void> stage(StageTask task) {
+        return () -> {
+            task.run();
+            return null;
+        };
+    }
+
+    private static Thread newStageThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "snowdrop-scan");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @FunctionalInterface
+    private interface StageTask {
+        void run() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Results produced by the visit of one file.
+     */
+    private static class FileResult<T> {
+        private final Path path;
+        private final List<T> results;
+
+        FileResult(Path path, List<T> results) {
+            this.path = path;
+            this.results = results;
+        }
+
+        Path getPath() { return path; }
+        List<T> getResults() { return results; }
+    }
+}
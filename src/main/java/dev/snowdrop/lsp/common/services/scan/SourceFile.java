@@ -0,0 +1,54 @@
+package dev.snowdrop.lsp.common.services.scan;
+
+import dev.snowdrop.lsp.common.services.ast.FileStamp;
+import dev.snowdrop.lsp.common.services.ast.SourceBytes;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * A Java file read by the scan pipeline, passed from the read stage to the parse stage.
+ * The content is read once: the pre-filter searches its bytes and the parser decodes the same buffer.
+ * The source of an open document also keeps the characters of the buffer, so that they are not decoded back.
+ */
+public class SourceFile {
+    private final Path path;
+    private final ByteBuffer content;
+    private final char[] chars;
+    private final FileStamp stamp;
+
+    public SourceFile(Path path, ByteBuffer content) {
+        this(path, content, null, null);
+    }
+
+    /**
+     * @param path The Java file
+     * @param content The UTF-8 content
+     * @param chars The buffer of the open document, or null when the content is read from disk
+     * @param stamp The stamp of the file read before its content, or null when the content does not come from disk
+     */
+    public SourceFile(Path path, ByteBuffer content, char[] chars, FileStamp stamp) {
+        this.path = path;
+        this.content = content;
+        this.chars = chars;
+        this.stamp = stamp;
+    }
+
+    public Path getPath() { return path; }
+    public ByteBuffer getContent() { return content; }
+    public FileStamp getStamp() { return stamp; }
+
+    /**
+     * Returns true when the content is the buffer of a document open in the client rather than the file on disk.
+     */
+    public boolean isOpenDocument() {
+        return chars != null;
+    }
+
+    /**
+     * Decode the content as UTF-8 for the parser.
+     */
+    public char[] toChars() {
+        return chars != null ? chars : SourceBytes.decode(content);
+    }
+}
@@ -0,0 +1,105 @@
+package dev.snowdrop.lsp.common.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How the threads reading the messages and running the requests of the launchers and clients are created.
+ * <p>
+ * {@link #POOL} uses a fixed pool of platform threads. {@link #VIRTUAL} starts a virtual thread per task,
+ * so that requests blocked on file I/O do not hold a platform thread and their number is not capped by
+ * a pool size. Virtual threads require Java 21: the executor is looked up by reflection so that the
+ * project still builds for Java 17, where the mode falls back to the pool.
+ * <p>
+ * The mode is chosen with the {@code snowdrop.executionMode} system property ({@code pool} or {@code virtual}),
+ * which the {@code jdk21} Maven profile sets to {@code virtual}.
+ */
+public enum ExecutionMode {
+    POOL,
+    VIRTUAL;
+
+    public static final String PROPERTY = "snowdrop.executionMode";
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 500;
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionMode.class);
+
+    /**
+     * Returns the mode set by the {@code snowdrop.executionMode} system property, {@link #POOL} by default.
+     */
+    public static ExecutionMode fromSystemProperty() {
+        String mode = System.getProperty(PROPERTY);
+        if (mode == null || mode.isBlank()) {
+            return POOL;
+        }
+        return valueOf(mode.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns true if virtual threads are available in the running JVM.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadFactory() != null;
+    }
+
+    /**
+     * Create an executor for this mode.
+     *
+     * @param name The prefix of the thread names
+     * @param poolSize The number of threads of the {@link #POOL} mode
+     * @return The executor, to be shut down with {@link #shutdown(ExecutorService)}
+     */
+    public ExecutorService newExecutor(String name, int poolSize) {
+        if (this == VIRTUAL) {
+            Method factory = virtualThreadFactory();
+            if (factory != null) {
+                try {
+                    return (ExecutorService) factory.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    logger.warn("Failed to create a virtual thread executor, using a pool of {} threads", poolSize, e);
+                }
+            } else {
+                logger.warn("Virtual threads require Java 21, using a pool of {} threads", poolSize);
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(poolSize, threadFactory);
+    }
+
+    /**
+     * Stop accepting tasks, give the running ones a short time to complete, then interrupt them.
+     */
+    public static void shutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            // The thread reading the messages is blocked on its input and only stops when interrupted
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Method virtualThreadFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -1,16 +1,97 @@
 package dev.snowdrop.lsp.common.utils;
 
 
+import dev.snowdrop.lsp.model.StatusReport;
 import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
 import org.eclipse.lsp4j.services.LanguageClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Client of the language servers, logging what they send.
+ * <p>
+ * It also tracks when jdt-ls is ready to be queried: once it has reported {@code ServiceReady} with a
+ * {@code language/status} notification, the import of the projects being done, and has ended all the work
+ * done progress it started, such as the build and the indexing of the workspace. As jdt-ls may begin new work
+ * right after ending the previous one, the server is only reported ready once it stayed so for a settle window:
+ * a progress beginning within the window starts it again.
+ */
 public class LSClient implements LanguageClient {
     private static final Logger logger = LoggerFactory.getLogger(LSClient.class);
 
+    public static final String SERVICE_READY = "ServiceReady";
+
+    /**
+     * Default time the server must stay without work in progress before it is reported ready.
+     */
+    public static final long DEFAULT_SETTLE_MILLIS = 500;
+
+    /**
+     * Default time the clients wait for the server to be ready before sending their queries anyway.
+     */
+    public static final long DEFAULT_READY_TIMEOUT_MILLIS = 300_000;
+
+    private final long settleMillis;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final Set<Either<String, Integer>> activeProgress = new HashSet<>();
+    private boolean serviceReady;
+    // Whether a settle window is running, and the count of the times the server got busy again to ignore it
+    private boolean settling;
+    private long idleGeneration;
+
+    public LSClient() {
+        this(DEFAULT_SETTLE_MILLIS);
+    }
+
+    /**
+     * @param settleMillis The time the server must stay without work in progress before it is reported ready
+     */
+    public LSClient(long settleMillis) {
+        this.settleMillis = settleMillis;
+    }
+
+    /**
+     * Returns client capabilities under which jdt-ls reports the progress of its work, which the readiness relies on.
+     */
+    public static ClientCapabilities readinessCapabilities() {
+        WindowClientCapabilities window = new WindowClientCapabilities();
+        window.setWorkDoneProgress(true);
+        ClientCapabilities capabilities = new ClientCapabilities();
+        capabilities.setWindow(window);
+        return capabilities;
+    }
+
+    /**
+     * Returns a future completing once the server is ready to be queried, see the class documentation.
+     * Servers which do not send {@code language/status} notifications are never reported ready, see
+     * {@link #whenReady(long)} to stop waiting for them.
+     */
+    public CompletableFuture<Void> whenReady() {
+        return ready;
+    }
+
+    /**
+     * Returns a future completing once the server is ready to be queried, or after the given time when it is not,
+     * such as a server which never reports its status. The timeout is logged, the queries being sent anyway.
+     */
+    public CompletableFuture<Void> whenReady(long timeoutMillis) {
+        CompletableFuture<Void> readyOrTimeout = new CompletableFuture<>();
+        ready.thenRun(() -> readyOrTimeout.complete(null));
+        CompletableFuture.delayedExecutor(timeoutMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            if (readyOrTimeout.complete(null)) {
+                logger.warn("CLIENT: The server was not reported ready after {} ms, going on anyway.", timeoutMillis);
+            }
+        });
+        return readyOrTimeout;
+    }
+
     @Override
     public void telemetryEvent(Object object) {
         logger.info("telemetryEvent: {}", object);
@@ -36,4 +117,75 @@ public class LSClient implements LanguageClient {
     public void logMessage(MessageParams messageParams) {
         logger.info("CLIENT: Log from server: [{}] {}", messageParams.getType(), messageParams.getMessage());
     }
+
+    @Override
+    public void notifyProgress(ProgressParams params) {
+        logger.debug("CLIENT: Progress {}: {}", params.getToken(), params.getValue());
+        if (params.getValue() == null || !params.getValue().isLeft()) {
+            return;
+        }
+        WorkDoneProgressNotification notification = params.getValue().getLeft();
+        synchronized (this) {
+            if (notification instanceof WorkDoneProgressBegin) {
+                activeProgress.add(params.getToken());
+            } else if (notification instanceof WorkDoneProgressEnd) {
+                activeProgress.remove(params.getToken());
+            }
+            checkReady();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> createProgress(WorkDoneProgressCreateParams params) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Receive the status of jdt-ls, which is not part of the protocol.
+     */
+    @JsonNotification("language/status")
+    public void languageStatus(StatusReport status) {
+        logger.info("CLIENT: Status of the server: [{}] {}", status.getType(), status.getMessage());
+        synchronized (this) {
+            if (SERVICE_READY.equals(status.getType())) {
+                serviceReady = true;
+            }
+            checkReady();
+        }
+    }
+
+    private void checkReady() {
+        if (ready.isDone()) {
+            return;
+        }
+        if (!serviceReady || !activeProgress.isEmpty()) {
+            // Busy again, the pending settle window is ignored
+            settling = false;
+            idleGeneration++;
+            return;
+        }
+        if (settling) {
+            return;
+        }
+        if (settleMillis <= 0) {
+            completeReady();
+            return;
+        }
+        settling = true;
+        long generation = idleGeneration;
+        CompletableFuture.delayedExecutor(settleMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            synchronized (this) {
+                // Still idle since the window started
+                if (generation == idleGeneration) {
+                    completeReady();
+                }
+            }
+        });
+    }
+
+    private void completeReady() {
+        if (ready.complete(null)) {
+            logger.info("CLIENT: The server is ready.");
+        }
+    }
 }
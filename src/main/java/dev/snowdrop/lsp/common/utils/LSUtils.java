@@ -6,15 +6,19 @@ import org.eclipse.lsp4j.InitializeResult;
 import org.eclipse.lsp4j.InitializedParams;
 import org.eclipse.lsp4j.jsonrpc.Launcher;
 import org.eclipse.lsp4j.launch.LSPLauncher;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.eclipse.lsp4j.services.LanguageServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -24,36 +28,89 @@ public class LSUtils {
     private static final Logger logger = LoggerFactory.getLogger(LSUtils.class);
 
     /**
-     * Create and set up an LSP server streams.
+     * Create and set up an LSP server streams, running it in the execution mode set by the
+     * {@code snowdrop.executionMode} system property.
      * 
      * @return SnowdropLS
      * @throws Exception if setup fails
      */
     public static SnowdropLS launchServer() throws Exception {
-        ExecutorService executor = Executors.newFixedThreadPool(4);
+        return launchServer(ExecutionMode.fromSystemProperty());
+    }
+
+    /**
+     * Create and set up an LSP server streams, connected to its client by ring buffers.
+     *
+     * @param mode Whether the launcher runs on a thread pool or on virtual threads
+     * @return SnowdropLS
+     * @throws Exception if setup fails
+     */
+    public static SnowdropLS launchServer(ExecutionMode mode) throws Exception {
+        return launchServer(mode, Transport.RING_BUFFER);
+    }
+
+    /**
+     * Create and set up an LSP server and a client connected to it within this JVM.
+     *
+     * @param mode Whether the launchers run on a thread pool or on virtual threads
+     * @param transport How the messages are carried between the client and the server
+     * @return SnowdropLS
+     * @throws Exception if setup fails
+     */
+    public static SnowdropLS launchServer(ExecutionMode mode, Transport transport) throws Exception {
+        ExecutorService executor = mode.newExecutor("snowdrop-server", 4);
+        ExecutorService clientExecutor = mode.newExecutor("snowdrop-client", 1);
         
         try {
-            // Create streams for client-snowdropLanguageServer communication
-            PipedInputStream jdtLSInput = new PipedInputStream();
-            PipedOutputStream jdtLSOutput = new PipedOutputStream(jdtLSInput);
+            // Create streams for client-snowdropLanguageServer communication, one per direction
+            InputStream serverInput;
+            OutputStream clientOutput;
+            InputStream clientInput;
+            OutputStream serverOutput;
+            if (transport == Transport.PIPED) {
+                PipedInputStream clientToServer = new PipedInputStream();
+                clientOutput = new PipedOutputStream(clientToServer);
+                serverInput = clientToServer;
+                PipedInputStream serverToClient = new PipedInputStream();
+                serverOutput = new PipedOutputStream(serverToClient);
+                clientInput = serverToClient;
+            } else {
+                RingBufferPipe clientToServer = new RingBufferPipe();
+                serverInput = clientToServer.getInputStream();
+                clientOutput = clientToServer.getOutputStream();
+                RingBufferPipe serverToClient = new RingBufferPipe();
+                clientInput = serverToClient.getInputStream();
+                serverOutput = serverToClient.getOutputStream();
+            }
             
             // Create and start the jdt-ls snowdropLanguageServer
             SnowdropLanguageServer snowdropLanguageServer = new SnowdropLanguageServer();
-            Launcher<org.eclipse.lsp4j.services.LanguageServer> serverLauncher = new LSPLauncher.Builder<org.eclipse.lsp4j.services.LanguageServer>()
+            // The executor is shut down when the server exits
+            snowdropLanguageServer.addExecutor(executor);
+            // The messages of the server are measured, and reported by the snowdrop/metrics command
+            MessageMetrics metrics = new MessageMetrics();
+            snowdropLanguageServer.setMessageMetrics(metrics);
+            Launcher<LanguageClient> serverLauncher = new MessageMetrics.LauncherBuilder<LanguageClient>(metrics)
                 .setLocalService(snowdropLanguageServer)
-                .setRemoteInterface(org.eclipse.lsp4j.services.LanguageServer.class)
-                .setInput(jdtLSInput)
-                .setOutput(jdtLSOutput)
+                .setRemoteInterface(LanguageClient.class)
+                .setInput(serverInput)
+                .setOutput(serverOutput)
                 .setExecutorService(executor)
                 .create();
+            snowdropLanguageServer.connect(serverLauncher.getRemoteProxy());
             serverLauncher.startListening();
-            return new SnowdropLS(snowdropLanguageServer);
+
+            Launcher<LanguageServer> clientLauncher = LSPLauncher.createClientLauncher(
+                new LSClient(), clientInput, clientOutput, clientExecutor, null);
+            clientLauncher.startListening();
+
+            return new SnowdropLS(snowdropLanguageServer, clientLauncher.getRemoteProxy(),
+                List.of(serverInput, serverOutput, clientInput, clientOutput), List.of(executor, clientExecutor));
             
         } catch (Exception e) {
             // Cleanup on failure
-            if (executor != null && !executor.isShutdown()) {
-                executor.shutdown();
-            }
+            executor.shutdown();
+            clientExecutor.shutdown();
             throw e;
         }
     }
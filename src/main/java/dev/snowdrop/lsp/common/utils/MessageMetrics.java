@@ -0,0 +1,265 @@
+package dev.snowdrop.lsp.common.utils;
+
+import com.google.gson.GsonBuilder;
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseMessage;
+import org.eclipse.lsp4j.launch.LSPLauncher;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Per-method counters of the JSON-RPC messages exchanged by a launcher: requests and notifications,
+ * requests in flight, errors, payload sizes and the latency histogram of the requests.
+ * <p>
+ * The launchers are built with {@link LauncherBuilder}, which intercepts the messages in both directions.
+ * The latency of a request received by the launcher is measured from its parsing until its response is
+ * written, and that of a request sent by the launcher from its sending until its response is received.
+ * Payloads are counted in characters of JSON while they are parsed or serialized, so measuring them does
+ * not serialize the messages a second time.
+ */
+public class MessageMetrics {
+    private final long startNanos = System.nanoTime();
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    // Requests received by the launcher, by id, waiting for their response to be sent
+    private final Map<String, Pending> pendingIncoming = new ConcurrentHashMap<>();
+    // Requests sent by the launcher, by id, waiting for their response to be received
+    private final Map<String, Pending> pendingOutgoing = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a snapshot of the counters, by method name.
+     */
+    public Map<String, MethodStats> snapshot() {
+        double elapsedSeconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        Map<String, MethodStats> stats = new TreeMap<>();
+        methods.forEach((method, metrics) -> stats.put(method, metrics.toStats(elapsedSeconds)));
+        return stats;
+    }
+
+    private MethodMetrics metrics(String method) {
+        return methods.computeIfAbsent(method, name -> new MethodMetrics());
+    }
+
+    private void onMessage(Message message, boolean outgoing) {
+        if (message instanceof RequestMessage) {
+            RequestMessage request = (RequestMessage) message;
+            MethodMetrics metrics = metrics(request.getMethod());
+            metrics.requests.increment();
+            metrics.inFlight.incrementAndGet();
+            pending(outgoing).put(request.getId(), new Pending(metrics, System.nanoTime()));
+        } else if (message instanceof NotificationMessage) {
+            metrics(((NotificationMessage) message).getMethod()).notifications.increment();
+        } else if (message instanceof ResponseMessage) {
+            ResponseMessage response = (ResponseMessage) message;
+            // A response sent answers a request received, and the reverse
+            Pending request = pending(!outgoing).remove(response.getId());
+            if (request != null) {
+                request.metrics.latency.recordNanos(System.nanoTime() - request.startNanos);
+                request.metrics.inFlight.decrementAndGet();
+                if (response.getError() != null) {
+                    request.metrics.errors.increment();
+                }
+            }
+        }
+    }
+
+    private void onPayload(Message message, long chars, boolean outgoing) {
+        MethodMetrics metrics = null;
+        if (message instanceof RequestMessage) {
+            metrics = metrics(((RequestMessage) message).getMethod());
+        } else if (message instanceof NotificationMessage) {
+            metrics = metrics(((NotificationMessage) message).getMethod());
+        } else if (message instanceof ResponseMessage) {
+            Pending request = pending(!outgoing).get(((ResponseMessage) message).getId());
+            metrics = request != null ? request.metrics : null;
+        }
+        if (metrics != null) {
+            (outgoing ? metrics.payloadOut : metrics.payloadIn).add(chars);
+        }
+    }
+
+    private Map<String, Pending> pending(boolean outgoing) {
+        return outgoing ? pendingOutgoing : pendingIncoming;
+    }
+
+    /**
+     * LSP launcher builder recording the messages of the launcher in the given metrics.
+     */
+    public static class LauncherBuilder<T> extends LSPLauncher.Builder<T> {
+        private final MessageMetrics metrics;
+
+        public LauncherBuilder(MessageMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        protected MessageJsonHandler createJsonHandler() {
+            return new MeteredJsonHandler(metrics, getSupportedMethods(), configureGson != null ? configureGson : gson -> { });
+        }
+
+        @Override
+        protected MessageConsumer wrapMessageConsumer(MessageConsumer consumer) {
+            // The consumer writing to the output stream receives the outgoing messages,
+            // the remote endpoint the incoming ones
+            boolean outgoing = consumer instanceof StreamMessageConsumer;
+            MessageConsumer wrapped = super.wrapMessageConsumer(consumer);
+            return message -> {
+                if (outgoing && message instanceof ResponseMessage) {
+                    // The response is serialized by the delegate, while its request is still pending
+                    wrapped.consume(message);
+                    metrics.onMessage(message, true);
+                } else {
+                    // A request sent is pending before it is written, as its response may be received
+                    // by the other thread as soon as it is
+                    metrics.onMessage(message, outgoing);
+                    wrapped.consume(message);
+                }
+            };
+        }
+    }
+
+    private static class MeteredJsonHandler extends MessageJsonHandler {
+        private final MessageMetrics metrics;
+
+        MeteredJsonHandler(MessageMetrics metrics, Map<String, JsonRpcMethod> supportedMethods, Consumer<GsonBuilder> configureGson) {
+            super(supportedMethods, configureGson);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Message parseMessage(Reader input) {
+            CountingReader reader = new CountingReader(input);
+            Message message = super.parseMessage(reader);
+            metrics.onPayload(message, reader.count, false);
+            return message;
+        }
+
+        @Override
+        public String serialize(Message message) {
+            String content = super.serialize(message);
+            metrics.onPayload(message, content.length(), true);
+            return content;
+        }
+    }
+
+    private static class CountingReader extends FilterReader {
+        private long count;
+
+        CountingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                count++;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    private static class Pending {
+        private final MethodMetrics metrics;
+        private final long startNanos;
+
+        Pending(MethodMetrics metrics, long startNanos) {
+            this.metrics = metrics;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static class MethodMetrics {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder notifications = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder payloadIn = new LongAdder();
+        private final LongAdder payloadOut = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        MethodStats toStats(double elapsedSeconds) {
+            long requestCount = requests.sum();
+            long notificationCount = notifications.sum();
+            return new MethodStats(requestCount, notificationCount, errors.sum(), inFlight.get(),
+                payloadIn.sum(), payloadOut.sum(), (requestCount + notificationCount) / elapsedSeconds,
+                latency.getPercentile(0.5), latency.getPercentile(0.99), latency.getPercentile(0.999), latency.getMax());
+        }
+    }
+
+    /**
+     * Snapshot of the counters of a method. Payloads are in characters of JSON, latencies in microseconds.
+     */
+    public static class MethodStats {
+        private final long requests;
+        private final long notifications;
+        private final long errors;
+        private final int inFlight;
+        private final long payloadIn;
+        private final long payloadOut;
+        private final double messagesPerSecond;
+        private final long p50Micros;
+        private final long p99Micros;
+        private final long p999Micros;
+        private final long maxMicros;
+
+        public MethodStats(long requests, long notifications, long errors, int inFlight, long payloadIn, long payloadOut,
+                           double messagesPerSecond, long p50Micros, long p99Micros, long p999Micros, long maxMicros) {
+            this.requests = requests;
+            this.notifications = notifications;
+            this.errors = errors;
+            this.inFlight = inFlight;
+            this.payloadIn = payloadIn;
+            this.payloadOut = payloadOut;
+            this.messagesPerSecond = messagesPerSecond;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.p999Micros = p999Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getRequests() { return requests; }
+        public long getNotifications() { return notifications; }
+        /** Returns the number of requests answered with an error. */
+        public long getErrors() { return errors; }
+        /** Returns the number of requests waiting for their response. */
+        public int getInFlight() { return inFlight; }
+        public long getPayloadIn() { return payloadIn; }
+        public long getPayloadOut() { return payloadOut; }
+        /** Returns the requests and notifications per second since the launcher was created. */
+        public double getMessagesPerSecond() { return messagesPerSecond; }
+        public long getP50Micros() { return p50Micros; }
+        public long getP99Micros() { return p99Micros; }
+        public long getP999Micros() { return p999Micros; }
+        public long getMaxMicros() { return maxMicros; }
+
+        @Override
+        public String toString() {
+            return String.format("requests=%d notifications=%d errors=%d inFlight=%d payloadIn=%d payloadOut=%d rate=%.1f/s p50=%dus p99=%dus p999=%dus max=%dus",
+                requests, notifications, errors, inFlight, payloadIn, payloadOut, messagesPerSecond,
+                p50Micros, p99Micros, p999Micros, maxMicros);
+        }
+    }
+}
@@ -7,7 +7,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 /**
  * Utility class to generate complete Maven Java projects with sample code
@@ -397,4 +400,290 @@ public class ProjectGenerator {
         Path classFile = projectRoot.resolve("src/main/java/" + annotationName + "TestClass.java");
         Files.writeString(classFile, classContent.toString());
     }
+
+    /**
+     * Generate a large multi-module Maven project, to measure the scans and indexes on a workspace shaped
+     * like a real repository. Each module has its own pom and packages, the annotations being declared in
+     * the first one. Classes mix fields, methods and nested types, annotated or not, and annotation names
+     * also appear in comments and strings. The generation is deterministic: the same options give the same files.
+     *
+     * @param projectRoot The root directory where the project should be created
+     * @param options The shape of the project
+     * @return What was generated, including the number of uses of every annotation
+     * @throws IOException If files cannot be created
+     */
+    public static SyntheticProject generateSyntheticProject(Path projectRoot, SyntheticProjectOptions options) throws IOException {
+        logger.info("Generating synthetic project of {} modules at: {}", options.getModuleCount(), projectRoot);
+        SplittableRandom random = new SplittableRandom(options.getSeed());
+        SyntheticProject project = new SyntheticProject(options.getAnnotations());
+
+        StringBuilder modules = new StringBuilder();
+        for (int module = 0; module < options.getModuleCount(); module++) {
+            String moduleName = moduleName(module);
+            modules.append("        <module>").append(moduleName).append("</module>\n");
+
+            Path moduleRoot = projectRoot.resolve(moduleName);
+            Files.createDirectories(moduleRoot);
+            Files.writeString(moduleRoot.resolve("pom.xml"), modulePom(options.getGroupId(), moduleName));
+            Path srcMain = moduleRoot.resolve("src/main/java");
+
+            if (module == 0) {
+                Path annotationDir = createPackageDirectory(srcMain, options.getGroupId() + ".annotations");
+                for (String annotation : options.getAnnotations()) {
+                    Files.writeString(annotationDir.resolve(annotation + ".java"),
+                        "package " + options.getGroupId() + ".annotations;\n\n" + annotationDeclaration(annotation));
+                    project.addFile(4);
+                }
+            }
+
+            // Each module draws from its own generator, so its content does not depend on the sizes of the previous ones
+            SplittableRandom moduleRandom = random.split();
+            for (int pkg = 0; pkg < options.getPackagesPerModule(); pkg++) {
+                String packageName = options.getGroupId() + "." + moduleName.replace('-', '_') + ".p" + pkg;
+                Path packageDir = createPackageDirectory(srcMain, packageName);
+                for (int cls = 0; cls < options.getClassesPerPackage(); cls++) {
+                    String className = "C" + module + "_" + pkg + "_" + cls;
+                    SyntheticClassWriter writer = new SyntheticClassWriter(options, moduleRandom, project);
+                    String content = writer.write(packageName, className);
+                    Files.writeString(packageDir.resolve(className + ".java"), content);
+                    project.addFile(writer.lineCount);
+                }
+            }
+        }
+
+        Files.writeString(projectRoot.resolve("pom.xml"), parentPom(options.getGroupId(), modules.toString()));
+        logger.info("Generated synthetic project: {}", project);
+        return project;
+    }
+
+    private static String moduleName(int module) {
+        return String.format("module-%03d", module);
+    }
+
+    private static String annotationDeclaration(String annotation) {
+        return """
+            public @interface %s {
+                String value() default "";
+            }
+            """.formatted(annotation);
+    }
+
+    private static String parentPom(String groupId, String modules) {
+        return """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <project xmlns="http://maven.apache.org/POM/4.0.0"
+                     xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+                     xsi:schemaLocation="http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd">
+                <modelVersion>4.0.0</modelVersion>
+
+                <groupId>%s</groupId>
+                <artifactId>synthetic-parent</artifactId>
+                <version>1.0.0</version>
+                <packaging>pom</packaging>
+
+                <modules>
+            %s    </modules>
+            </project>
+            """.formatted(groupId, modules);
+    }
+
+    private static String modulePom(String groupId, String moduleName) {
+        return """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <project xmlns="http://maven.apache.org/POM/4.0.0"
+                     xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+                     xsi:schemaLocation="http://maven.apache.org/POM/4.0.0 http://maven.apache.org/xsd/maven-4.0.0.xsd">
+                <modelVersion>4.0.0</modelVersion>
+
+                <parent>
+                    <groupId>%s</groupId>
+                    <artifactId>synthetic-parent</artifactId>
+                    <version>1.0.0</version>
+                </parent>
+                <artifactId>%s</artifactId>
+            </project>
+            """.formatted(groupId, moduleName);
+    }
+
+    /**
+     * Writes the source of a synthetic class, member by member, until it reaches the number of lines drawn for it.
+     */
+    private static class SyntheticClassWriter {
+        private final SyntheticProjectOptions options;
+        private final SplittableRandom random;
+        private final SyntheticProject project;
+        private final StringBuilder source = new StringBuilder();
+        private int lineCount;
+        private int memberCount;
+
+        SyntheticClassWriter(SyntheticProjectOptions options, SplittableRandom random, SyntheticProject project) {
+            this.options = options;
+            this.random = random;
+            this.project = project;
+        }
+
+        String write(String packageName, String className) {
+            boolean large = random.nextDouble() < options.getLargeFileRatio();
+            int targetLines = large ? options.getLargeFileLines() : drawLineCount();
+
+            line("package " + packageName + ";");
+            line("");
+            line("import " + options.getGroupId() + ".annotations.*;");
+            line("import java.util.List;");
+            line("");
+            line("/**");
+            line(" * Synthetic class " + className + ".");
+            line(" */");
+            if (random.nextDouble() < options.getAnnotatedClassRatio()) {
+                annotation("", className);
+            }
+            line("public class " + className + " {");
+            if (large) {
+                // Generated code, such as a lexer table, made of a few huge members
+                writeTable(targetLines);
+            }
+            while (lineCount < targetLines - 1) {
+                writeMember("    ", random.nextDouble() < options.getNestedTypeRatio());
+            }
+            line("}");
+            return source.toString();
+        }
+
+        private int drawLineCount() {
+            double lines = options.getMedianLines() * Math.exp(options.getLineSpread() * random.nextGaussian());
+            return (int) Math.max(15, Math.min(lines, options.getLargeFileLines()));
+        }
+
+        private void writeMember(String indent, boolean nestedType) {
+            int index = memberCount++;
+            if (random.nextDouble() < options.getNoiseRatio()) {
+                writeNoise(indent);
+            }
+            if (random.nextDouble() < options.getAnnotationDensity()) {
+                annotation(indent, "member" + index);
+            }
+            if (nestedType) {
+                line(indent + "public static class Nested" + index + " {");
+                int members = 1 + random.nextInt(4);
+                for (int i = 0; i < members; i++) {
+                    writeMember(indent + "    ", false);
+                }
+                line(indent + "}");
+            } else if (random.nextInt(3) == 0) {
+                line(indent + "private int field" + index + " = " + random.nextInt(1000) + ";");
+            } else {
+                line(indent + "public int method" + index + "(List<String> values) {");
+                line(indent + "    int total = 0;");
+                int statements = 1 + random.nextInt(8);
+                for (int i = 0; i < statements; i++) {
+                    line(indent + "    for (String value : values) {");
+                    line(indent + "        total += value.length() * " + random.nextInt(100) + ";");
+                    line(indent + "    }");
+                }
+                line(indent + "    return total;");
+                line(indent + "}");
+            }
+        }
+
+        private void writeNoise(String indent) {
+            String annotation = pickAnnotation();
+            switch (random.nextInt(3)) {
+                case 0:
+                    line(indent + "// Formerly annotated with @" + annotation);
+                    break;
+                case 1:
+                    line(indent + "/* @" + annotation + "(\"disabled\") */");
+                    break;
+                default:
+                    line(indent + "private static final String NOTE_" + memberCount + " = \"@" + annotation + "\";");
+                    break;
+            }
+        }
+
+        private void writeTable(int targetLines) {
+            line("    private static final int[] TABLE = {");
+            while (lineCount < targetLines - 2) {
+                StringBuilder row = new StringBuilder("        ");
+                for (int i = 0; i < 16; i++) {
+                    row.append(random.nextInt(65536)).append(", ");
+                }
+                line(row.toString());
+            }
+            line("    };");
+        }
+
+        private void annotation(String indent, String value) {
+            String annotation = pickAnnotation();
+            line(indent + "@" + annotation + "(\"" + value + "\")");
+            project.addAnnotation(annotation);
+        }
+
+        private String pickAnnotation() {
+            List<String> annotations = options.getAnnotations();
+            return annotations.get(random.nextInt(annotations.size()));
+        }
+
+        private void line(String text) {
+            source.append(text).append('\n');
+            lineCount++;
+        }
+    }
+
+    /**
+     * Summary of a generated synthetic project.
+     */
+    public static class SyntheticProject {
+        private final Map<String, Integer> annotationCounts = new LinkedHashMap<>();
+        private int fileCount;
+        private long lineCount;
+
+        SyntheticProject(List<String> annotations) {
+            for (String annotation : annotations) {
+                annotationCounts.put(annotation, 0);
+            }
+        }
+
+        private void addFile(int lines) {
+            fileCount++;
+            lineCount += lines;
+        }
+
+        private void addAnnotation(String annotation) {
+            annotationCounts.merge(annotation, 1, Integer::sum);
+        }
+
+        public int getFileCount() { return fileCount; }
+        public long getLineCount() { return lineCount; }
+
+        /**
+         * Returns the number of uses of every annotation, the results expected from a search.
+         * Names in comments and strings are not counted.
+         */
+        public Map<String, Integer> getAnnotationCounts() { return annotationCounts; }
+
+        @Override
+        public String toString() {
+            return String.format("files=%d lines=%d annotations=%s", fileCount, lineCount, annotationCounts);
+        }
+    }
+
+    /**
+     * Generate a synthetic project from the command line.
+     * <p>
+     * Usage: {@code ProjectGenerator <projectRoot> [modules] [seed]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ProjectGenerator <projectRoot> [modules] [seed]");
+            System.exit(1);
+        }
+        SyntheticProjectOptions options = new SyntheticProjectOptions();
+        if (args.length > 1) {
+            options.setModuleCount(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            options.setSeed(Long.parseLong(args[2]));
+        }
+        generateSyntheticProject(Path.of(args[0]), options);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,212 @@
+package dev.snowdrop.lsp.common.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory pipe between a writer and a reader of the same JVM, replacing the
+ * {@link java.io.PipedInputStream}/{@link java.io.PipedOutputStream} pair: a fixed-size ring buffer
+ * indexed by two counters, the writer only moving the tail and the reader only moving the head.
+ * <p>
+ * Unlike the piped streams (1 KB buffer, {@code wait(1000)} polling, broken when the writing thread
+ * dies), the buffer is large enough to hold a big JSON-RPC message, any thread may write or read,
+ * and a blocked side spins briefly before parking until the other side signals progress.
+ * <p>
+ * There must be a single writer and a single reader at a time, as with the launchers of lsp4j which
+ * serialize the writes of the messages and read them from one thread.
+ */
+public class RingBufferPipe {
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int SPINS = 200;
+
+    private final byte[] buffer;
+    private final int mask;
+    // Next position to read, only moved by the reader
+    private final AtomicLong head = new AtomicLong();
+    // Next position to write, only moved by the writer
+    private final AtomicLong tail = new AtomicLong();
+    private volatile Thread waitingReader;
+    private volatile Thread waitingWriter;
+    private volatile boolean writerClosed;
+    private volatile boolean readerClosed;
+
+    private final InputStream inputStream = new RingInputStream();
+    private final OutputStream outputStream = new RingOutputStream();
+
+    public RingBufferPipe() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The size of the buffer, rounded up to a power of two
+     */
+    public RingBufferPipe(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Pipe capacity must be at least 2, got " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new byte[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the end of the pipe given to the reader.
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Returns the end of the pipe given to the writer.
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    private class RingInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            // Called for every byte of the message headers, so it does not go through an array
+            long readPosition = head.get();
+            if (awaitData(readPosition) == 0) {
+                return -1;
+            }
+            int b = buffer[(int) (readPosition & mask)] & 0xFF;
+            head.set(readPosition + 1);
+            LockSupport.unpark(waitingWriter);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            long readPosition = head.get();
+            long available = awaitData(readPosition);
+            if (available == 0) {
+                return -1;
+            }
+            int count = (int) Math.min(length, available);
+            int start = (int) (readPosition & mask);
+            int firstPart = Math.min(count, buffer.length - start);
+            System.arraycopy(buffer, start, bytes, offset, firstPart);
+            System.arraycopy(buffer, 0, bytes, offset + firstPart, count - firstPart);
+            head.set(readPosition + count);
+            LockSupport.unpark(waitingWriter);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) (tail.get() - head.get());
+        }
+
+        @Override
+        public void close() {
+            readerClosed = true;
+            LockSupport.unpark(waitingWriter);
+        }
+
+        /**
+         * Wait for bytes to read, returning 0 once the writer closed the pipe and everything was read.
+         */
+        private long awaitData(long readPosition) throws IOException {
+            int spins = 0;
+            while (true) {
+                long available = tail.get() - readPosition;
+                if (available > 0) {
+                    return available;
+                }
+                if (writerClosed) {
+                    // Bytes written just before closing must still be read
+                    return tail.get() - readPosition;
+                }
+                if (spins++ < SPINS) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                waitingReader = Thread.currentThread();
+                // Check again after publishing the waiting thread, so that a write made in between is not missed
+                if (tail.get() == readPosition && !writerClosed) {
+                    LockSupport.park(this);
+                }
+                waitingReader = null;
+                if (Thread.interrupted()) {
+                    throw new IOException("Interrupted while reading from the pipe");
+                }
+            }
+        }
+    }
+
+    private class RingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            if (writerClosed) {
+                throw new IOException("Pipe closed");
+            }
+            long writePosition = tail.get();
+            awaitSpace(writePosition);
+            buffer[(int) (writePosition & mask)] = (byte) b;
+            tail.set(writePosition + 1);
+            LockSupport.unpark(waitingReader);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (writerClosed) {
+                throw new IOException("Pipe closed");
+            }
+            while (length > 0) {
+                long writePosition = tail.get();
+                int count = (int) Math.min(length, awaitSpace(writePosition));
+                int start = (int) (writePosition & mask);
+                int firstPart = Math.min(count, buffer.length - start);
+                System.arraycopy(bytes, offset, buffer, start, firstPart);
+                System.arraycopy(bytes, offset + firstPart, buffer, 0, count - firstPart);
+                tail.set(writePosition + count);
+                LockSupport.unpark(waitingReader);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        @Override
+        public void close() {
+            writerClosed = true;
+            LockSupport.unpark(waitingReader);
+        }
+
+        /**
+         * Wait for free space in the buffer, which fills up when a message is larger than the buffer.
+         */
+        private long awaitSpace(long writePosition) throws IOException {
+            int spins = 0;
+            while (true) {
+                if (readerClosed) {
+                    throw new IOException("Pipe closed by the reader");
+                }
+                long free = buffer.length - (writePosition - head.get());
+                if (free > 0) {
+                    return free;
+                }
+                if (spins++ < SPINS) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                waitingWriter = Thread.currentThread();
+                if (writePosition - head.get() == buffer.length && !readerClosed) {
+                    LockSupport.park(this);
+                }
+                waitingWriter = null;
+                if (Thread.interrupted()) {
+                    throw new IOException("Interrupted while writing to the pipe");
+                }
+            }
+        }
+    }
+}
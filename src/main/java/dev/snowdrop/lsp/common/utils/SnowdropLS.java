@@ -2,15 +2,63 @@ package dev.snowdrop.lsp.common.utils;
 
 import org.eclipse.lsp4j.services.LanguageServer;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
 public class SnowdropLS {
 
     private final LanguageServer server;
+    private final LanguageServer remoteServer;
+    private final List<Closeable> streams;
+    private final List<ExecutorService> executors;
 
     public SnowdropLS(LanguageServer server) {
+        this(server, server, List.of(), List.of());
+    }
+
+    /**
+     * @param server The server instance
+     * @param remoteServer The proxy sending the requests to the server as JSON-RPC messages
+     * @param streams The streams connecting the client and the server
+     * @param executors The executors of the launchers
+     */
+    public SnowdropLS(LanguageServer server, LanguageServer remoteServer, List<Closeable> streams, List<ExecutorService> executors) {
         this.server = server;
+        this.remoteServer = remoteServer;
+        this.streams = streams;
+        this.executors = executors;
     }
 
+    /**
+     * Returns the server instance, called directly without going through JSON-RPC.
+     */
     public LanguageServer getServer() {
         return server;
     }
+
+    /**
+     * Returns the proxy of the client launcher, whose requests and responses are serialized
+     * and carried by the transport like those of an editor.
+     */
+    public LanguageServer getRemoteServer() {
+        return remoteServer;
+    }
+
+    /**
+     * Close the connection between the client and the server, and stop the launchers.
+     */
+    public void shutdown() {
+        for (Closeable stream : streams) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Already closed by the other side
+            }
+        }
+        for (ExecutorService executor : executors) {
+            ExecutionMode.shutdown(executor);
+        }
+    }
 }
@@ -0,0 +1,104 @@
+package dev.snowdrop.lsp.common.utils;
+
+import java.util.List;
+
+/**
+ * Shape of a synthetic workspace generated by {@link ProjectGenerator#generateSyntheticProject(java.nio.file.Path, SyntheticProjectOptions)}.
+ * <p>
+ * The defaults give a multi-module Maven project comparable to a large repository: 300 modules of
+ * 10 packages of 10 classes, about 30,000 files and 6 million lines. The same options and seed always
+ * generate the same files.
+ */
+public class SyntheticProjectOptions {
+    private long seed = 42;
+    private String groupId = "dev.snowdrop.synthetic";
+    private int moduleCount = 300;
+    private int packagesPerModule = 10;
+    private int classesPerPackage = 10;
+    private List<String> annotations = List.of("MySearchableAnnotation", "ImportantAnnotation");
+    private double annotatedClassRatio = 0.3;
+    private double annotationDensity = 0.1;
+    private int medianLines = 120;
+    private double lineSpread = 0.8;
+    private double largeFileRatio = 0.002;
+    private int largeFileLines = 20_000;
+    private double nestedTypeRatio = 0.05;
+    private double noiseRatio = 0.05;
+
+    public SyntheticProjectOptions() {
+    }
+
+    /**
+     * Returns the seed of the random generator, the only source of variation between two generations.
+     */
+    public long getSeed() { return seed; }
+    public SyntheticProjectOptions setSeed(long seed) { this.seed = seed; return this; }
+
+    /**
+     * Returns the group id of the project, also the root package of the generated classes.
+     */
+    public String getGroupId() { return groupId; }
+    public SyntheticProjectOptions setGroupId(String groupId) { this.groupId = groupId; return this; }
+
+    public int getModuleCount() { return moduleCount; }
+    public SyntheticProjectOptions setModuleCount(int moduleCount) { this.moduleCount = moduleCount; return this; }
+
+    public int getPackagesPerModule() { return packagesPerModule; }
+    public SyntheticProjectOptions setPackagesPerModule(int packagesPerModule) { this.packagesPerModule = packagesPerModule; return this; }
+
+    public int getClassesPerPackage() { return classesPerPackage; }
+    public SyntheticProjectOptions setClassesPerPackage(int classesPerPackage) { this.classesPerPackage = classesPerPackage; return this; }
+
+    /**
+     * Returns the simple names of the annotations declared by the project and used by its classes.
+     */
+    public List<String> getAnnotations() { return annotations; }
+    public SyntheticProjectOptions setAnnotations(List<String> annotations) { this.annotations = annotations; return this; }
+
+    /**
+     * Returns the fraction of the classes annotated at the type level.
+     */
+    public double getAnnotatedClassRatio() { return annotatedClassRatio; }
+    public SyntheticProjectOptions setAnnotatedClassRatio(double annotatedClassRatio) { this.annotatedClassRatio = annotatedClassRatio; return this; }
+
+    /**
+     * Returns the fraction of the fields, methods and nested types annotated.
+     */
+    public double getAnnotationDensity() { return annotationDensity; }
+    public SyntheticProjectOptions setAnnotationDensity(double annotationDensity) { this.annotationDensity = annotationDensity; return this; }
+
+    /**
+     * Returns the median number of lines of a file. Sizes follow a log-normal distribution, as in real code
+     * bases where most files are small and a few are much larger.
+     */
+    public int getMedianLines() { return medianLines; }
+    public SyntheticProjectOptions setMedianLines(int medianLines) { this.medianLines = medianLines; return this; }
+
+    /**
+     * Returns the standard deviation of the logarithm of the file sizes, 0 giving files of the median size.
+     */
+    public double getLineSpread() { return lineSpread; }
+    public SyntheticProjectOptions setLineSpread(double lineSpread) { this.lineSpread = lineSpread; return this; }
+
+    /**
+     * Returns the fraction of the files replaced by large generated files, such as parsers or data tables.
+     */
+    public double getLargeFileRatio() { return largeFileRatio; }
+    public SyntheticProjectOptions setLargeFileRatio(double largeFileRatio) { this.largeFileRatio = largeFileRatio; return this; }
+
+    public int getLargeFileLines() { return largeFileLines; }
+    public SyntheticProjectOptions setLargeFileLines(int largeFileLines) { this.largeFileLines = largeFileLines; return this; }
+
+    /**
+     * Returns the fraction of the members of a class which are nested types.
+     */
+    public double getNestedTypeRatio() { return nestedTypeRatio; }
+    public SyntheticProjectOptions setNestedTypeRatio(double nestedTypeRatio) { this.nestedTypeRatio = nestedTypeRatio; return this; }
+
+    /**
+     * Returns the fraction of the members followed by an annotation name in a comment or a string literal,
+     * which the quick check lets through but the parser rejects.
+     */
+    public double getNoiseRatio() { return noiseRatio; }
+    public SyntheticProjectOptions setNoiseRatio(double noiseRatio) { this.noiseRatio = noiseRatio; return this; }
+}
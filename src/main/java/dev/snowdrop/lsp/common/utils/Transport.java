@@ -0,0 +1,15 @@
+package dev.snowdrop.lsp.common.utils;
+
+/**
+ * How the client and the server launched in the same JVM by {@link LSUtils} exchange their JSON-RPC messages.
+ */
+public enum Transport {
+    /**
+     * {@link java.io.PipedInputStream} and {@link java.io.PipedOutputStream}, with their 1 KB buffer and polling.
+     */
+    PIPED,
+    /**
+     * {@link RingBufferPipe}, a large lock-free buffer whose reader is woken up as soon as a message is written.
+     */
+    RING_BUFFER
+}
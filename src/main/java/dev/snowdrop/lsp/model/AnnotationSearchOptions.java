@@ -0,0 +1,60 @@
+package dev.snowdrop.lsp.model;
+
+import dev.snowdrop.lsp.common.services.ast.ParseMode;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+
+/**
+ * Options of a {@code java/findAnnotatedClasses} request, passed as the argument following the annotation name.
+ * <p>
+ * Example: {@code {"parseMode": "DECLARATIONS_ONLY", "partialResultToken": "search-1", "timeoutMillis": 5000}}
+ */
+public class AnnotationSearchOptions {
+    private ParseMode parseMode = ParseMode.FULL;
+    private Either<String, Integer> partialResultToken;
+    private Long timeoutMillis;
+
+    public AnnotationSearchOptions() {
+    }
+
+    public AnnotationSearchOptions(ParseMode parseMode) {
+        this.parseMode = parseMode;
+    }
+
+    /**
+     * Returns how files are parsed. {@link ParseMode#DECLARATIONS_ONLY} is faster but does not find
+     * annotations in method or lambda bodies, such as annotations of local variables.
+     */
+    public ParseMode getParseMode() {
+        return parseMode;
+    }
+
+    public void setParseMode(ParseMode parseMode) {
+        this.parseMode = parseMode;
+    }
+
+    /**
+     * Returns the token of the {@code $/progress} notifications carrying the locations as they are found,
+     * or null to receive them all in the response. {@code workspace/executeCommand} has no partial result
+     * token in the protocol, so it is passed as an option.
+     */
+    public Either<String, Integer> getPartialResultToken() {
+        return partialResultToken;
+    }
+
+    public void setPartialResultToken(Either<String, Integer> partialResultToken) {
+        this.partialResultToken = partialResultToken;
+    }
+
+    /**
+     * Returns the time given to the search from its start, after which the scan stops and the locations
+     * found so far are returned in an {@link AnnotationSearchResponse} flagged as partial, or null to run
+     * the search to completion. When set, the response is always an {@link AnnotationSearchResponse}.
+     */
+    public Long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(Long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+}
@@ -0,0 +1,29 @@
+package dev.snowdrop.lsp.model;
+
+/**
+ * Response of a {@code java/findAnnotatedClasses} request given a timeout, wrapping its locations with
+ * whether the search was stopped by its deadline before scanning the whole workspace.
+ * <p>
+ * Example: {@code {"locations": [...], "partial": true}}
+ */
+public class AnnotationSearchResponse {
+    private final Object locations;
+    private final boolean partial;
+
+    /**
+     * @param locations The list of locations of a single annotation, or the locations keyed by annotation name
+     * @param partial Whether the deadline stopped the search, the locations then being the ones found so far
+     */
+    public AnnotationSearchResponse(Object locations, boolean partial) {
+        this.locations = locations;
+        this.partial = partial;
+    }
+
+    public Object getLocations() {
+        return locations;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+}
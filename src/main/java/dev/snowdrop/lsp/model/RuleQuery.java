@@ -0,0 +1,31 @@
+package dev.snowdrop.lsp.model;
+
+import java.util.Map;
+
+/**
+ * A query of a rule, sent to the language server as the argument of an {@code io.konveyor.tackle.ruleEntry} command.
+ * <p>
+ * Example: {@code {"ruleId": "snowdrop-00001", "query": "dev.snowdrop.MySearchableAnnotation", "location": "4"}}
+ */
+public class RuleQuery {
+    private final String ruleId;
+    private final Map<String, Object> params;
+
+    /**
+     * @param ruleId The rule the query belongs to, a rule having one query per condition
+     * @param params The parameters read by the {@code RuleEntryParams} of the server: {@code project},
+     *               {@code query}, {@code location}, {@code analysisMode}, etc
+     */
+    public RuleQuery(String ruleId, Map<String, Object> params) {
+        this.ruleId = ruleId;
+        this.params = params;
+    }
+
+    public String getRuleId() {
+        return ruleId;
+    }
+
+    public Map<String, Object> getParams() {
+        return params;
+    }
+}
@@ -0,0 +1,67 @@
+package dev.snowdrop.lsp.model;
+
+import org.eclipse.lsp4j.SymbolInformation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Symbols matched by the queries of a rule, aggregated as the queries complete.
+ */
+public class RuleResult {
+    private final String ruleId;
+    private final List<SymbolInformation> symbols = new ArrayList<>();
+    private final List<String> errors = new ArrayList<>();
+    private int queryCount;
+    private long maxQueryMillis;
+
+    public RuleResult(String ruleId) {
+        this.ruleId = ruleId;
+    }
+
+    /**
+     * Add the outcome of a query of the rule: its symbols, or the error it failed with.
+     */
+    public synchronized void addQuery(List<SymbolInformation> querySymbols, Throwable error, long queryMillis) {
+        queryCount++;
+        maxQueryMillis = Math.max(maxQueryMillis, queryMillis);
+        if (error != null) {
+            errors.add(String.valueOf(error.getMessage()));
+        } else {
+            symbols.addAll(querySymbols);
+        }
+    }
+
+    public String getRuleId() {
+        return ruleId;
+    }
+
+    public synchronized List<SymbolInformation> getSymbols() {
+        return new ArrayList<>(symbols);
+    }
+
+    /**
+     * Returns the messages of the queries which failed, the rule then only having the symbols of the other ones.
+     */
+    public synchronized List<String> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    public synchronized int getQueryCount() {
+        return queryCount;
+    }
+
+    /**
+     * Returns the time taken by the slowest query of the rule, from its submission to its answer, including the
+     * time it waited for a slot in the window of requests in flight.
+     */
+    public synchronized long getMaxQueryMillis() {
+        return maxQueryMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: %d symbol(s) from %d quer%s, slowest %d ms%s", ruleId, symbols.size(), queryCount,
+            queryCount == 1 ? "y" : "ies", maxQueryMillis, errors.isEmpty() ? "" : ", errors " + errors);
+    }
+}
@@ -0,0 +1,39 @@
+package dev.snowdrop.lsp.model;
+
+/**
+ * Parameter of the {@code language/status} notifications of jdt-ls, reporting the start of the server and the
+ * import of the projects.
+ * <p>
+ * Example: {@code {"type": "ServiceReady", "message": "ServiceReady"}}
+ */
+public class StatusReport {
+    private String type;
+    private String message;
+
+    public StatusReport() {
+    }
+
+    public StatusReport(String type, String message) {
+        this.type = type;
+        this.message = message;
+    }
+
+    /**
+     * Returns the kind of status, such as {@code Starting}, {@code ProjectStatus}, {@code Started} or {@code ServiceReady}.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
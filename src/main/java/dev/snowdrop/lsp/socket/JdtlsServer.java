@@ -1,14 +1,16 @@
 package dev.snowdrop.lsp.socket;
 
+import dev.snowdrop.lsp.common.jdtls.JdtlsProcessFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Objects;
 import java.util.Optional;
 
+import static dev.snowdrop.lsp.common.utils.FileUtils.getExampleDir;
+
 public class JdtlsServer {
     private static final Logger logger = LoggerFactory.getLogger(JdtlsServer.class);
     private static String JDT_LS_PATH;
@@ -29,39 +31,15 @@ public class JdtlsServer {
         Path wksDir = Paths.get("../");
         logger.info("Created workspace project directory: " + wksDir);
 
-        String os = System.getProperty("os.name").toLowerCase();
-        Path configPath = os.contains("win") ? Paths.get(JDT_LS_PATH, "config_win") :
-            os.contains("mac") ? Paths.get(JDT_LS_PATH, "config_mac_arm") :
-                Paths.get(JDT_LS_PATH, "config_linux");
-
-        String launcherJar = Objects
-            .requireNonNull(
-            new File(JDT_LS_PATH, "plugins")
-                .listFiles((dir, name) -> name.startsWith("org.eclipse.equinox.launcher_")))[0].getName();
+        // With JDT_REUSE_DATA=true, the workspace folder of the project is kept between runs, and so its index
+        Path dataDir = Boolean.parseBoolean(System.getenv("JDT_REUSE_DATA"))
+            ? JdtlsProcessFactory.projectDataDir(wksDir.resolve(".jdt_workspaces"), getExampleDir())
+            : wksDir.resolve(".jdt_workspace");
 
-        ProcessBuilder pb = new ProcessBuilder(
-            "java",
-            "-Declipse.application=org.eclipse.jdt.ls.core.id1",
-            "-DCLIENT_PORT=3333",
-            "-Dosgi.bundles.defaultStartLevel=4",
-            "-Dosgi.checkConfiguration=true",
-            "-Dosgi.sharedConfiguration.area.readOnly=true",
-            "-Dosgi.configuration.cascaded=true",
-            "-Declipse.product=org.eclipse.jdt.ls.core.product",
-            "-Dlog.level=ALL",
-            "-Djdt.ls.debug=true",
-            "-noverify",
-            "-Xmx1G",
-            "--add-modules=ALL-SYSTEM",
-            "--add-opens", "java.base/java.util=ALL-UNNAMED",
-            "--add-opens", "java.base/java.lang=ALL-UNNAMED",
-            "-jar", Paths.get(JDT_LS_PATH, "plugins", launcherJar).toString(),
-            "-configuration", configPath.toString(),
-            "-data", wksDir.resolve(".jdt_workspace").toString()
-        );
-        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
-        
-        Process process = pb.start();
+        Process process = new JdtlsProcessFactory(Paths.get(JDT_LS_PATH))
+            .setSystemProperty("CLIENT_PORT", "3333")
+            .setInheritError(true)
+            .start(dataDir);
         logger.info("JDT Language Server process started");
         
         return process;
@@ -1,10 +1,12 @@
 package dev.snowdrop.lsp.socket;
 
+import dev.snowdrop.lsp.common.services.LsSearchService;
+import dev.snowdrop.lsp.common.utils.ExecutionMode;
 import dev.snowdrop.lsp.common.utils.LSClient;
+import dev.snowdrop.lsp.common.utils.MessageMetrics;
 import dev.snowdrop.lsp.model.LSPSymbolInfo;
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.jsonrpc.Launcher;
-import org.eclipse.lsp4j.launch.LSPLauncher;
 import org.eclipse.lsp4j.services.LanguageServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,55 +20,64 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
-import static dev.snowdrop.lsp.common.services.LsSearchService.executeCmd;
 import static dev.snowdrop.lsp.common.utils.FileUtils.getExampleDir;
 
 public class JdtlsSocketClient {
 
     private static final Logger logger = LoggerFactory.getLogger(JdtlsSocketClient.class);
     private static final int SERVER_PORT = 3333;
-    private static final long TIMEOUT = 2000;
 
     public static void main(String[] args) throws Exception {
         Launcher<LanguageServer> launcher;
         ExecutorService executor;
+        // Per-method latencies and payloads of the messages exchanged with the server, logged on exit
+        MessageMetrics metrics = new MessageMetrics();
+        LSClient client = new LSClient();
 
         logger.info("Connecting to the JDT Language Server on port {}...", SERVER_PORT);
 
         try (ServerSocket serverSocket = new ServerSocket(SERVER_PORT)) {
             Socket socket = serverSocket.accept();
-            executor = Executors.newSingleThreadExecutor();
-            LSClient client = new LSClient();
-
-            launcher = LSPLauncher.createClientLauncher(
-                client,
-                socket.getInputStream(),
-                socket.getOutputStream(),
-                executor,
-                (writer) -> writer // No-op, we don't want to wrap the writer
-            );
+            // A single thread reads the messages of the server, or a virtual thread with -Dsnowdrop.executionMode=virtual
+            executor = ExecutionMode.fromSystemProperty().newExecutor("jdtls-socket-client", 1);
+
+            launcher = new MessageMetrics.LauncherBuilder<LanguageServer>(metrics)
+                .setLocalService(client)
+                .setRemoteInterface(LanguageServer.class)
+                .setInput(socket.getInputStream())
+                .setOutput(socket.getOutputStream())
+                .setExecutorService(executor)
+                .create();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        launcher.startListening();
+        Future<Void> listening = launcher.startListening();
 
         LanguageServer remoteProxy = launcher.getRemoteProxy();
 
         InitializeParams p = new InitializeParams();
         p.setProcessId((int) ProcessHandle.current().pid());
         p.setRootUri(getExampleDir().toUri().toString());
-        p.setCapabilities(new ClientCapabilities());
+        p.setCapabilities(LSClient.readinessCapabilities());
 
+        // With JDT_READY_TIMEOUT=<ms>, the time given to a cold jdt ls to initialize, and after which the
+        // command is sent even if it was not reported ready
+        long readyTimeout = Optional.ofNullable(System.getenv("JDT_READY_TIMEOUT")).map(Long::parseLong)
+            .orElse(LSClient.DEFAULT_READY_TIMEOUT_MILLIS);
         CompletableFuture<InitializeResult> future = remoteProxy.initialize(p);
-        future.get(TIMEOUT, TimeUnit.MILLISECONDS).toString();
+        future.get(readyTimeout, TimeUnit.MILLISECONDS);
 
         InitializedParams initialized = new InitializedParams();
         remoteProxy.initialized(initialized);
 
+        // The command is sent once the project is imported and indexed, as reported by the server
+        logger.info("CLIENT: Waiting for jdt ls to import and index the project ...");
+        CompletableFuture<Void> ready = client.whenReady(readyTimeout);
+
 
         String annotationToFind = "MySearchableAnnotation";
         //logger.info("CLIENT: Sending custom command '{}' to find '@{}'...", customCmd, annotationToFind);
@@ -75,16 +86,24 @@ public class JdtlsSocketClient {
         String customCmd = Optional.ofNullable(System.getenv("LS_CMD")).orElse("java.project.getAll");
         logger.info("CLIENT: Sending custom command '{}' ...", customCmd);
 
-        future
-            .thenRunAsync(() -> {
-                executeCmd(customCmd, null, remoteProxy);
-            })
+        LsSearchService searchService = new LsSearchService(remoteProxy);
+        ready
+            .thenCompose(done -> searchService.executeCommand(customCmd, null))
+            .thenAccept(symbols -> LsSearchService.logSymbols(customCmd, symbols))
             .exceptionally(
                 t -> {
                     t.printStackTrace();
                     return null;
                 }
             );
+
+        // Keep the client running until the server closes the connection
+        try {
+            listening.get();
+        } finally {
+            ExecutionMode.shutdown(executor);
+            metrics.snapshot().forEach((method, stats) -> logger.info("CLIENT: {}: {}", method, stats));
+        }
     }
 
     /**
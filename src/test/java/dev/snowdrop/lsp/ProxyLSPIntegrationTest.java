@@ -1,23 +1,78 @@
 package dev.snowdrop.lsp;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
+import dev.snowdrop.lsp.common.SnowdropLanguageServer;
+import dev.snowdrop.lsp.common.jdtls.JdtlsInstance;
+import dev.snowdrop.lsp.common.jdtls.JdtlsPool;
+import dev.snowdrop.lsp.common.jdtls.JdtlsPoolOptions;
+import dev.snowdrop.lsp.common.jdtls.JdtlsProcessFactory;
+import dev.snowdrop.lsp.common.services.JavaWorkspaceService;
+import dev.snowdrop.lsp.common.services.LsSearchService;
+import dev.snowdrop.lsp.common.services.RuleBatchRunner;
+import dev.snowdrop.lsp.common.services.ast.ASTAnnotationParser;
+import dev.snowdrop.lsp.common.services.ast.ASTParserPool;
+import dev.snowdrop.lsp.common.services.ast.BatchAnnotationParser;
+import dev.snowdrop.lsp.common.services.ast.CompilationUnitCache;
+import dev.snowdrop.lsp.common.services.ast.FileStamp;
+import dev.snowdrop.lsp.common.services.ast.ParseMode;
+import dev.snowdrop.lsp.common.services.ast.SourceBytes;
+import dev.snowdrop.lsp.common.services.document.DocumentStore;
+import dev.snowdrop.lsp.common.services.document.TextDocument;
+import dev.snowdrop.lsp.common.services.scan.ScanListener;
+import dev.snowdrop.lsp.common.services.scan.ScanOptions;
+import dev.snowdrop.lsp.common.services.scan.ScanPipeline;
+import dev.snowdrop.lsp.common.services.scan.SourceFile;
+import dev.snowdrop.lsp.common.utils.ExecutionMode;
+import dev.snowdrop.lsp.common.utils.LSClient;
+import dev.snowdrop.lsp.common.utils.MessageMetrics;
+import dev.snowdrop.lsp.common.utils.ProjectGenerator;
 import dev.snowdrop.lsp.common.utils.SnowdropLS;
+import dev.snowdrop.lsp.common.utils.SyntheticProjectOptions;
+import dev.snowdrop.lsp.common.utils.Transport;
 import dev.snowdrop.lsp.common.utils.LSUtils;
+import dev.snowdrop.lsp.model.AnnotationSearchResponse;
+import dev.snowdrop.lsp.model.LSPSymbolInfo;
+import dev.snowdrop.lsp.model.RuleQuery;
+import dev.snowdrop.lsp.model.RuleResult;
+import dev.snowdrop.lsp.model.StatusReport;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
 import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.services.LanguageServer;
+import org.eclipse.lsp4j.services.WorkspaceService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -173,6 +228,1070 @@ public class ProxyLSPIntegrationTest {
         logger.info("TEST: Correctly found no results for non-existent annotation");
     }
     
+    @Test
+    @Timeout(10)
+    void testAnnotationSearchResultsAreDeterministic() throws Exception {
+        ExecuteCommandParams commandParams = new ExecuteCommandParams(
+            "java/findAnnotatedClasses",
+            Collections.singletonList("MySearchableAnnotation")
+        );
+
+        Gson gson = new Gson();
+        Type locationListType = new TypeToken<List<Location>>() {}.getType();
+        List<Location> first = gson.fromJson(gson.toJson(snowdropLS.getServer().getWorkspaceService()
+            .executeCommand(commandParams).get(5, TimeUnit.SECONDS)), locationListType);
+        List<Location> second = gson.fromJson(gson.toJson(snowdropLS.getServer().getWorkspaceService()
+            .executeCommand(commandParams).get(5, TimeUnit.SECONDS)), locationListType);
+
+        // Results are ordered by file then by position whatever the scheduling of the scan threads
+        assertThat(second).isEqualTo(first);
+        assertThat(first)
+            .extracting(location -> getFileName(location.getUri()))
+            .containsExactly("ComplexAnnotatedClass.java", "ComplexAnnotatedClass.java",
+                "ComplexAnnotatedClass.java", "SimpleClass.java");
+    }
+
+    @Test
+    @Timeout(10)
+    void testAnnotationIndexFollowsWatchedFileChanges() throws Exception {
+        Path addedFile = tempDir.resolve("AddedClass.java");
+        Files.writeString(addedFile, """
+            public class AddedClass {
+                @MySearchableAnnotation
+                private String addedField;
+            }
+            """);
+        snowdropLS.getServer().getWorkspaceService().didChangeWatchedFiles(new DidChangeWatchedFilesParams(List.of(
+            new FileEvent(addedFile.toUri().toString(), FileChangeType.Created),
+            new FileEvent(tempDir.resolve("SimpleClass.java").toUri().toString(), FileChangeType.Deleted)
+        )));
+
+        ExecuteCommandParams commandParams = new ExecuteCommandParams(
+            "java/findAnnotatedClasses",
+            Collections.singletonList("MySearchableAnnotation")
+        );
+        Object result = snowdropLS.getServer().getWorkspaceService()
+            .executeCommand(commandParams).get(5, TimeUnit.SECONDS);
+
+        Gson gson = new Gson();
+        Type locationListType = new TypeToken<List<Location>>() {}.getType();
+        List<Location> locations = gson.fromJson(gson.toJson(result), locationListType);
+
+        assertThat(locations)
+            .extracting(location -> getFileName(location.getUri()))
+            .contains("AddedClass.java")
+            .doesNotContain("SimpleClass.java");
+    }
+
+    @Test
+    @Timeout(10)
+    void testServerRegistersTheWatcherOfJavaFiles() throws Exception {
+        List<RegistrationParams> registrations = new CopyOnWriteArrayList<>();
+        LSClient client = new LSClient() {
+            @Override
+            public CompletableFuture<Void> registerCapability(RegistrationParams params) {
+                registrations.add(params);
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+        SnowdropLanguageServer server = new SnowdropLanguageServer(1);
+        server.connect(client);
+
+        WorkspaceClientCapabilities workspace = new WorkspaceClientCapabilities();
+        workspace.setDidChangeWatchedFiles(new DidChangeWatchedFilesCapabilities(true));
+        ClientCapabilities capabilities = new ClientCapabilities();
+        capabilities.setWorkspace(workspace);
+        InitializeParams initParams = new InitializeParams();
+        initParams.setCapabilities(capabilities);
+        server.initialize(initParams).get(5, TimeUnit.SECONDS);
+        server.initialized(new InitializedParams());
+
+        assertThat(registrations).singleElement()
+            .extracting(params -> params.getRegistrations().get(0))
+            .satisfies(registration -> {
+                assertThat(registration.getMethod()).isEqualTo("workspace/didChangeWatchedFiles");
+                DidChangeWatchedFilesRegistrationOptions options = (DidChangeWatchedFilesRegistrationOptions) registration.getRegisterOptions();
+                assertThat(options.getWatchers()).extracting(watcher -> watcher.getGlobPattern().getLeft())
+                    .containsExactly("**/*.java");
+            });
+
+        // A client without the dynamic registration is not asked to watch the files
+        SnowdropLanguageServer otherServer = new SnowdropLanguageServer(1);
+        otherServer.connect(client);
+        otherServer.initialize(new InitializeParams()).get(5, TimeUnit.SECONDS);
+        otherServer.initialized(new InitializedParams());
+        assertThat(registrations).hasSize(1);
+    }
+
+    @Test
+    @Timeout(10)
+    void testAnnotationSearchReadsOpenDocumentBuffers() throws Exception {
+        Path simpleClassFile = tempDir.resolve("SimpleClass.java");
+        String uri = simpleClassFile.toUri().toString();
+        var textDocumentService = snowdropLS.getServer().getTextDocumentService();
+        textDocumentService.didOpen(new DidOpenTextDocumentParams(
+            new TextDocumentItem(uri, "java", 1, Files.readString(simpleClassFile))));
+
+        // Annotate a new field at the top of the class, then remove the annotation of simpleField
+        textDocumentService.didChange(new DidChangeTextDocumentParams(
+            new VersionedTextDocumentIdentifier(uri, 2),
+            List.of(
+                new TextDocumentContentChangeEvent(new Range(new Position(1, 4), new Position(1, 4)),
+                    "@MySearchableAnnotation\n    private int unsavedField;\n    "),
+                new TextDocumentContentChangeEvent(new Range(new Position(8, 4), new Position(8, 27)), ""))));
+
+        assertThat(findSimpleClassLines()).containsExactly(1);
+
+        // Once closed, the file on disk is searched again
+        textDocumentService.didClose(new DidCloseTextDocumentParams(new TextDocumentIdentifier(uri)));
+
+        assertThat(findSimpleClassLines()).containsExactly(6);
+    }
+
+    private List<Integer> findSimpleClassLines() throws Exception {
+        ExecuteCommandParams commandParams = new ExecuteCommandParams(
+            "java/findAnnotatedClasses",
+            Collections.singletonList("MySearchableAnnotation")
+        );
+        Object result = snowdropLS.getServer().getWorkspaceService()
+            .executeCommand(commandParams).get(5, TimeUnit.SECONDS);
+
+        Gson gson = new Gson();
+        Type locationListType = new TypeToken<List<Location>>() {}.getType();
+        List<Location> locations = gson.fromJson(gson.toJson(result), locationListType);
+        return locations.stream()
+            .filter(location -> getFileName(location.getUri()).equals("SimpleClass.java"))
+            .map(location -> location.getRange().getStart().getLine())
+            .toList();
+    }
+
+    @Test
+    @Timeout(20)
+    void testParserPoolParsesConcurrentlyWithinItsBound() throws Exception {
+        String source = """
+            public class Counter {
+                @MySearchableAnnotation
+                public void increment() {
+                    int count = 0;
+                    count++;
+                }
+            }
+            """;
+
+        // A lease skipping the method bodies does not leave its settings to the next lease of the same parser
+        ASTParserPool singleParser = new ASTParserPool(1);
+        CompilationUnit declarations = singleParser.parse(source.toCharArray(), ParseMode.DECLARATIONS_ONLY);
+        CompilationUnit full = singleParser.parse(source.toCharArray(), ParseMode.FULL);
+        assertThat(firstMethodBody(declarations).statements()).isEmpty();
+        assertThat(firstMethodBody(full).statements()).hasSize(2);
+        assertThat(singleParser.getParserCount()).isEqualTo(1);
+
+        // Concurrent parses each get the AST of their own source, with no more parsers than the pool size
+        ASTParserPool pool = new ASTParserPool(2);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> parsedNames = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String className = "Parsed" + i;
+                ParseMode mode = i % 2 == 0 ? ParseMode.FULL : ParseMode.DECLARATIONS_ONLY;
+                parsedNames.add(threads.submit(() -> {
+                    CompilationUnit unit = pool.parse(source.replace("Counter", className).toCharArray(), mode);
+                    int statements = firstMethodBody(unit).statements().size();
+                    return ((TypeDeclaration) unit.types().get(0)).getName().getIdentifier() + "/" + statements;
+                }));
+            }
+            for (int i = 0; i < parsedNames.size(); i++) {
+                assertThat(parsedNames.get(i).get(10, TimeUnit.SECONDS)).isEqualTo("Parsed" + i + "/" + (i % 2 == 0 ? 2 : 0));
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+        assertThat(pool.getParserCount()).isBetween(1, 2);
+    }
+
+    private static Block firstMethodBody(CompilationUnit unit) {
+        return ((TypeDeclaration) unit.types().get(0)).getMethods()[0].getBody();
+    }
+
+    @Test
+    @Timeout(10)
+    void testBatchParsingFindsTheSameAnnotationsAsPerFileParsing() throws Exception {
+        List<Path> javaFiles;
+        try (Stream<Path> files = Files.list(tempDir)) {
+            javaFiles = files.filter(file -> file.toString().endsWith(".java")).sorted().toList();
+        }
+
+        List<Location> perFile = new ArrayList<>();
+        for (Path javaFile : javaFiles) {
+            perFile.addAll(ASTAnnotationParser.parseJavaFileForAnnotations(javaFile, "MySearchableAnnotation"));
+        }
+        // Batches of 2 files, the last one holding a single file
+        List<Location> batched = new BatchAnnotationParser(2).parseJavaFilesForAnnotations(javaFiles, "MySearchableAnnotation");
+
+        assertThat(batched).hasSize(4).isEqualTo(perFile);
+        assertThat(new BatchAnnotationParser(2, ParseMode.DECLARATIONS_ONLY)
+            .parseJavaFilesForAnnotations(javaFiles, "MySearchableAnnotation")).isEqualTo(perFile);
+    }
+
+    @Test
+    @Timeout(10)
+    void testDeclarationsOnlySearchSkipsMethodBodies() throws Exception {
+        Path bodyFile = tempDir.resolve("BodyAnnotatedClass.java");
+        Files.writeString(bodyFile, """
+            public class BodyAnnotatedClass {
+                @MySearchableAnnotation
+                private String field;
+
+                public void method() {
+                    @MySearchableAnnotation
+                    String local = "value";
+                    Runnable runnable = () -> {
+                        @MySearchableAnnotation
+                        int lambdaLocal = 0;
+                    };
+                }
+            }
+            """);
+        snowdropLS.getServer().getWorkspaceService().didChangeWatchedFiles(new DidChangeWatchedFilesParams(List.of(
+            new FileEvent(bodyFile.toUri().toString(), FileChangeType.Created)
+        )));
+
+        Gson gson = new Gson();
+        Type locationListType = new TypeToken<List<Location>>() {}.getType();
+        List<Location> fullLocations = gson.fromJson(gson.toJson(snowdropLS.getServer().getWorkspaceService()
+            .executeCommand(new ExecuteCommandParams("java/findAnnotatedClasses",
+                List.of("MySearchableAnnotation")))
+            .get(5, TimeUnit.SECONDS)), locationListType);
+        List<Location> declarationLocations = gson.fromJson(gson.toJson(snowdropLS.getServer().getWorkspaceService()
+            .executeCommand(new ExecuteCommandParams("java/findAnnotatedClasses",
+                List.of("MySearchableAnnotation", gson.toJsonTree(java.util.Map.of("parseMode", "DECLARATIONS_ONLY")))))
+            .get(5, TimeUnit.SECONDS)), locationListType);
+
+        assertThat(fullLocations)
+            .filteredOn(location -> getFileName(location.getUri()).equals("BodyAnnotatedClass.java"))
+            .hasSize(3);
+        assertThat(declarationLocations)
+            .filteredOn(location -> getFileName(location.getUri()).equals("BodyAnnotatedClass.java"))
+            .hasSize(1);
+
+        // A declarations-only parse finds what the index answers for that mode
+        assertThat(ASTAnnotationParser.parseJavaFileForAnnotations(bodyFile, SourceBytes.read(bodyFile),
+            "MySearchableAnnotation", ParseMode.DECLARATIONS_ONLY))
+            .hasSize(1);
+    }
+
+    @Test
+    @Timeout(10)
+    void testFailedParseReleasesTheThreadsWaitingForIt() throws Exception {
+        CompilationUnitCache cache = new CompilationUnitCache(Long.MAX_VALUE);
+        String source = "class Failing { }";
+        ByteBuffer content = SourceBytes.encode(source.toCharArray());
+        CountDownLatch firstParsing = new CountDownLatch(1);
+        CountDownLatch waiterStarted = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // The first path fails to be parsed with an error once a second path waits for the same content
+            Future<CompilationUnit> failing = executor.submit(() -> cache.parse(
+                new FileStamp(tempDir.resolve("First.java"), 1, content.remaining()), content.duplicate(), () -> {
+                    firstParsing.countDown();
+                    try {
+                        waiterStarted.await();
+                        while (cache.getStats().getHitCount() == 0) {
+                            Thread.sleep(10);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new StackOverflowError("Deeply nested code");
+                }, ParseMode.FULL));
+            Future<CompilationUnit> waiting = executor.submit(() -> {
+                // The first path owns the parse, the second one waits for it
+                firstParsing.await();
+                waiterStarted.countDown();
+                return cache.parse(new FileStamp(tempDir.resolve("Second.java"), 1, content.remaining()), content.duplicate(),
+                    source::toCharArray, ParseMode.FULL);
+            });
+
+            assertThatThrownBy(failing::get).hasCauseInstanceOf(StackOverflowError.class);
+            assertThatThrownBy(waiting::get).hasRootCauseInstanceOf(StackOverflowError.class);
+
+            // The failure is not cached, the next parse of the content succeeds
+            assertThat(cache.parse(new FileStamp(tempDir.resolve("Third.java"), 1, content.remaining()), content.duplicate(),
+                source::toCharArray, ParseMode.FULL).types()).hasSize(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testUnchangedContentIsServedFromTheAstCache() throws Exception {
+        // The cache is shared by the tests, so the content is made unique to this run
+        String source = """
+            public class CachedClass {
+                @MySearchableAnnotation
+                private String field%d;
+            }
+            """.formatted(System.nanoTime());
+        // The workspace indexes are built through the same cache, so they are waited for before measuring
+        snowdropLS.getServer().getWorkspaceService().symbol(new WorkspaceSymbolParams("")).get(5, TimeUnit.SECONDS);
+        Path cachedFile = tempDir.resolve("CachedClass.java");
+        Files.writeString(cachedFile, source);
+        CompilationUnitCache cache = CompilationUnitCache.getDefault();
+
+        CompilationUnitCache.Stats before = cache.getStats();
+        assertThat(ASTAnnotationParser.parseJavaFileForAnnotations(cachedFile, "MySearchableAnnotation")).hasSize(1);
+        assertThat(ASTAnnotationParser.analyzeAllAnnotations(cachedFile).getAnnotationCount()).isEqualTo(1);
+
+        // A file rewritten with the same content and a copy of it at another path are not parsed again
+        Files.setLastModifiedTime(cachedFile, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        Path copy = Files.createDirectories(tempDir.resolve("vendor")).resolve("CachedClass.java");
+        Files.writeString(copy, source);
+        assertThat(ASTAnnotationParser.parseJavaFileForAnnotations(cachedFile, "MySearchableAnnotation")).hasSize(1);
+        List<Location> copyLocations = ASTAnnotationParser.parseJavaFileForAnnotations(copy, "MySearchableAnnotation");
+        assertThat(copyLocations).singleElement()
+            .satisfies(location -> assertThat(location.getUri()).isEqualTo(copy.toUri().toString()));
+
+        CompilationUnitCache.Stats after = cache.getStats();
+        assertThat(after.getMissCount() - before.getMissCount()).isEqualTo(1);
+        assertThat(after.getHitCount() - before.getHitCount()).isEqualTo(3);
+
+        // A new content is parsed
+        Files.writeString(cachedFile, source.replace("private String", "@MySearchableAnnotation private String"));
+        assertThat(ASTAnnotationParser.parseJavaFileForAnnotations(cachedFile, "MySearchableAnnotation")).hasSize(2);
+        assertThat(cache.getStats().getMissCount() - after.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    @Timeout(10)
+    void testScanSurvivesParserErrorsAndFailsOnStageErrors() throws Exception {
+        ScanPipeline pipeline = new ScanPipeline(new ScanOptions(1, 1, 1));
+        BiFunction<SourceFile, CompilationUnit, List<String>> visitor = (source, unit) -> {
+            if (source.getPath().endsWith("SimpleClass.java")) {
+                throw new StackOverflowError("Deeply nested code");
+            }
+            return List.of(source.getPath().getFileName().toString());
+        };
+
+        // An error of the parser only fails its file
+        assertThat(pipeline.scan(tempDir, source -> true, ParseMode.FULL, visitor))
+            .containsExactly("ComplexAnnotatedClass.java", "MySearchableAnnotation.java");
+
+        // A failing stage fails the scan instead of leaving the other stages blocked on their full queues
+        ScanListener<String> failingListener = new ScanListener<>() {
+            @Override
+            public void onFileCompleted(Path file, List<String> results) {
+                throw new IllegalStateException("Listener failure");
+            }
+        };
+        assertThatThrownBy(() -> pipeline.scan(tempDir, source -> true, ParseMode.FULL, visitor, failingListener))
+            .isInstanceOf(IOException.class)
+            .hasRootCauseMessage("Listener failure");
+    }
+
+    @Test
+    @Timeout(10)
+    void testMultiAnnotationSearchIsKeyedByName() throws Exception {
+        ExecuteCommandParams commandParams = new ExecuteCommandParams(
+            "java/findAnnotatedClasses",
+            List.of(List.of("MySearchableAnnotation", "Override", "NonExistentAnnotation"))
+        );
+
+        // Served from the annotation index built at initialization
+        Object indexResult = snowdropLS.getServer().getWorkspaceService()
+            .executeCommand(commandParams).get(5, TimeUnit.SECONDS);
+
+        // Served by a single scan as this service has no index
+        JavaWorkspaceService scanningService = new JavaWorkspaceService();
+        scanningService.setWorkspaceRoot(tempDir.toUri().toString());
+        Object scanResult = scanningService.executeCommand(commandParams).get(5, TimeUnit.SECONDS);
+
+        Gson gson = new Gson();
+        Type resultType = new TypeToken<Map<String, List<Location>>>() {}.getType();
+        Map<String, List<Location>> indexLocations = gson.fromJson(gson.toJson(indexResult), resultType);
+        Map<String, List<Location>> scanLocations = gson.fromJson(gson.toJson(scanResult), resultType);
+
+        assertThat(indexLocations).containsOnlyKeys("MySearchableAnnotation", "Override", "NonExistentAnnotation");
+        assertThat(indexLocations.get("MySearchableAnnotation")).hasSize(4);
+        assertThat(indexLocations.get("Override")).hasSize(1);
+        assertThat(indexLocations.get("NonExistentAnnotation")).isEmpty();
+        assertThat(scanLocations).isEqualTo(indexLocations);
+    }
+
+    @Test
+    @Timeout(30)
+    void testSyntheticProjectIsDeterministicAndSearchable() throws Exception {
+        SyntheticProjectOptions options = new SyntheticProjectOptions()
+            .setModuleCount(4)
+            .setPackagesPerModule(3)
+            .setClassesPerPackage(5)
+            .setLargeFileRatio(0.05)
+            .setLargeFileLines(2000)
+            .setNoiseRatio(0.2);
+        Path first = Files.createTempDirectory("lsp-synthetic-");
+        Path second = Files.createTempDirectory("lsp-synthetic-");
+        ProjectGenerator.SyntheticProject project = ProjectGenerator.generateSyntheticProject(first, options);
+        ProjectGenerator.generateSyntheticProject(second, options);
+
+        Path someClass = Path.of("module-002/src/main/java/dev/snowdrop/synthetic/module_002/p1/C2_1_3.java");
+        assertThat(Files.readString(second.resolve(someClass))).isEqualTo(Files.readString(first.resolve(someClass)));
+        assertThat(project.getFileCount()).isEqualTo(4 * 3 * 5 + options.getAnnotations().size());
+
+        // Every annotation counted by the generator is found, and none of the names in comments and strings
+        JavaWorkspaceService service = new JavaWorkspaceService();
+        service.setWorkspaceRoot(first.toUri().toString());
+        Object result = service.executeCommand(new ExecuteCommandParams(
+            "java/findAnnotatedClasses", List.of(options.getAnnotations()))).get(20, TimeUnit.SECONDS);
+        Gson gson = new Gson();
+        Map<String, List<Location>> locations = gson.fromJson(gson.toJson(result),
+            new TypeToken<Map<String, List<Location>>>() {}.getType());
+        for (String annotation : options.getAnnotations()) {
+            assertThat(locations.get(annotation)).as(annotation)
+                .hasSize(project.getAnnotationCounts().get(annotation))
+                .isNotEmpty();
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testAnnotationSearchStreamsPartialResultsAndProgress() throws Exception {
+        List<ProgressParams> notifications = new CopyOnWriteArrayList<>();
+        JavaWorkspaceService service = new JavaWorkspaceService();
+        service.setWorkspaceRoot(tempDir.toUri().toString());
+        service.setClient(new LSClient() {
+            @Override
+            public void notifyProgress(ProgressParams params) {
+                notifications.add(params);
+            }
+        });
+
+        ExecuteCommandParams commandParams = new ExecuteCommandParams("java/findAnnotatedClasses",
+            List.of("MySearchableAnnotation", Map.of("partialResultToken", "partial")), Either.forLeft("work"));
+        Object result = service.executeCommand(commandParams).get(5, TimeUnit.SECONDS);
+
+        // The locations were all sent as partial results, so the response is empty
+        assertThat(result).asList().isEmpty();
+
+        Gson gson = new Gson();
+        Type locationListType = new TypeToken<List<Location>>() {}.getType();
+        List<Location> streamed = new ArrayList<>();
+        List<WorkDoneProgressNotification> workDone = new ArrayList<>();
+        for (ProgressParams notification : notifications) {
+            if (notification.getToken().getLeft().equals("partial")) {
+                streamed.addAll(gson.fromJson(gson.toJson(notification.getValue().getRight()), locationListType));
+            } else {
+                assertThat(notification.getToken().getLeft()).isEqualTo("work");
+                workDone.add(notification.getValue().getLeft());
+            }
+        }
+        assertThat(streamed).hasSize(4);
+        assertThat(workDone.get(0)).isInstanceOf(WorkDoneProgressBegin.class);
+        assertThat(workDone.get(workDone.size() - 1)).isInstanceOf(WorkDoneProgressEnd.class);
+        assertThat(((WorkDoneProgressEnd) workDone.get(workDone.size() - 1)).getMessage()).isEqualTo("Found 4 matches");
+    }
+
+    @Test
+    @Timeout(10)
+    void testIndexedSearchStreamsResultsAnAnnotationAtATime() throws Exception {
+        List<ProgressParams> notifications = new CopyOnWriteArrayList<>();
+        SnowdropLanguageServer server = new SnowdropLanguageServer(1);
+        server.connect(new LSClient() {
+            @Override
+            public void notifyProgress(ProgressParams params) {
+                notifications.add(params);
+            }
+        });
+        LSUtils.initializeLanguageServer(server, tempDir);
+
+        Object result = server.getWorkspaceService().executeCommand(new ExecuteCommandParams("java/findAnnotatedClasses",
+            List.of(List.of("MySearchableAnnotation", "Override"), Map.of("partialResultToken", "partial")),
+            Either.forLeft("work"))).get(5, TimeUnit.SECONDS);
+
+        // The locations were all sent as partial results, so the response has no location
+        assertThat((Map<?, ?>) result).allSatisfy((name, locations) -> assertThat(locations).asList().isEmpty());
+
+        Gson gson = new Gson();
+        Type batchType = new TypeToken<Map<String, List<Location>>>() {}.getType();
+        List<Map<String, List<Location>>> batches = new ArrayList<>();
+        List<WorkDoneProgressNotification> workDone = new ArrayList<>();
+        for (ProgressParams notification : notifications) {
+            if (notification.getToken().getLeft().equals("partial")) {
+                batches.add(gson.fromJson(gson.toJson(notification.getValue().getRight()), batchType));
+            } else {
+                workDone.add(notification.getValue().getLeft());
+            }
+        }
+        // The first annotation looked up in the index is sent without waiting for the others
+        assertThat(batches.get(0)).containsOnlyKeys("MySearchableAnnotation");
+        assertThat(batches.get(0).get("MySearchableAnnotation")).hasSize(4);
+        assertThat(batches).flatExtracting(batch -> batch.getOrDefault("Override", List.of())).hasSize(1);
+        assertThat(workDone.get(0)).isInstanceOf(WorkDoneProgressBegin.class);
+        assertThat(((WorkDoneProgressEnd) workDone.get(workDone.size() - 1)).getMessage()).isEqualTo("Found 5 matches");
+    }
+
+    @Test
+    @Timeout(10)
+    void testSearchesRunOnTheComputeExecutor() throws Exception {
+        // Hold the searches until the test lets them run
+        List<Runnable> pendingSearches = new CopyOnWriteArrayList<>();
+        JavaWorkspaceService service = new JavaWorkspaceService();
+        service.setWorkspaceRoot(tempDir.toUri().toString());
+        service.setComputeExecutor(pendingSearches::add);
+
+        CompletableFuture<Object> search = service.executeCommand(new ExecuteCommandParams(
+            "java/findAnnotatedClasses",
+            Collections.singletonList("MySearchableAnnotation")
+        ));
+
+        // The caller, the message dispatching thread of a launcher, is not blocked by the scan
+        assertThat(search).isNotDone();
+        assertThat(pendingSearches).hasSize(1);
+
+        pendingSearches.forEach(Runnable::run);
+        assertThat(search.get(5, TimeUnit.SECONDS)).asList().hasSize(4);
+    }
+
+    @Test
+    @Timeout(10)
+    void testCancelledAndExpiredSearchesStopScanning() throws Exception {
+        List<ProgressParams> notifications = new CopyOnWriteArrayList<>();
+        List<Runnable> pendingSearches = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Object>> searches = new CopyOnWriteArrayList<>();
+        JavaWorkspaceService service = new JavaWorkspaceService();
+        service.setWorkspaceRoot(tempDir.toUri().toString());
+        service.setComputeExecutor(pendingSearches::add);
+        service.setClient(new LSClient() {
+            @Override
+            public void notifyProgress(ProgressParams params) {
+                notifications.add(params);
+                // The client gives up as soon as the search begins, as a $/cancelRequest would
+                if (params.getValue().getLeft() instanceof WorkDoneProgressBegin) {
+                    searches.forEach(search -> search.cancel(true));
+                }
+            }
+        });
+
+        // A search cancelled while it runs stops before scanning the files
+        searches.add(service.executeCommand(new ExecuteCommandParams("java/findAnnotatedClasses",
+            List.of("MySearchableAnnotation"), Either.forLeft("work"))));
+        pendingSearches.forEach(Runnable::run);
+        pendingSearches.clear();
+        assertThat(searches.get(0)).isCancelled();
+        WorkDoneProgressEnd end = (WorkDoneProgressEnd) notifications.get(notifications.size() - 1).getValue().getLeft();
+        assertThat(end.getMessage()).isEqualTo("Found 0 matches");
+
+        // A search past its deadline answers the locations found so far, flagged as partial
+        CompletableFuture<Object> expired = service.executeCommand(new ExecuteCommandParams("java/findAnnotatedClasses",
+            List.of("MySearchableAnnotation", Map.of("timeoutMillis", 0))));
+        CompletableFuture<Object> completed = service.executeCommand(new ExecuteCommandParams("java/findAnnotatedClasses",
+            List.of("MySearchableAnnotation", Map.of("timeoutMillis", 60_000))));
+        pendingSearches.forEach(Runnable::run);
+
+        AnnotationSearchResponse expiredResponse = (AnnotationSearchResponse) expired.get(5, TimeUnit.SECONDS);
+        assertThat(expiredResponse.isPartial()).isTrue();
+        assertThat(expiredResponse.getLocations()).asList().isEmpty();
+        AnnotationSearchResponse completedResponse = (AnnotationSearchResponse) completed.get(5, TimeUnit.SECONDS);
+        assertThat(completedResponse.isPartial()).isFalse();
+        assertThat(completedResponse.getLocations()).asList().hasSize(4);
+    }
+
+    @Test
+    @Timeout(10)
+    void testSearchesStopWaitingForTheIndexWhenCancelledOrExpired() throws Exception {
+        // The indexes are only built once the test lets the indexer run
+        CountDownLatch indexing = new CountDownLatch(1);
+        ExecutorService indexExecutor = ExecutionMode.POOL.newExecutor("test-indexer", 1);
+        indexExecutor.execute(() -> {
+            try {
+                indexing.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        SnowdropLanguageServer server = new SnowdropLanguageServer(1);
+        JavaWorkspaceService workspaceService = (JavaWorkspaceService) server.getWorkspaceService();
+        server.setIndexExecutor(indexExecutor);
+        LSUtils.initializeLanguageServer(server, tempDir);
+
+        // A cancelled search releases the only compute thread while the indexes are being built
+        CompletableFuture<Object> cancelled = workspaceService.executeCommand(new ExecuteCommandParams("java/findAnnotatedClasses",
+            List.of("MySearchableAnnotation")));
+        Thread.sleep(100);
+        cancelled.cancel(true);
+
+        // A search past its deadline answers an empty partial response rather than waiting for the indexes
+        AnnotationSearchResponse expired = (AnnotationSearchResponse) workspaceService.executeCommand(new ExecuteCommandParams(
+            "java/findAnnotatedClasses", List.of("MySearchableAnnotation", Map.of("timeoutMillis", 200))))
+            .get(5, TimeUnit.SECONDS);
+        assertThat(expired.isPartial()).isTrue();
+        assertThat(expired.getLocations()).asList().isEmpty();
+
+        indexing.countDown();
+        AnnotationSearchResponse completed = (AnnotationSearchResponse) workspaceService.executeCommand(new ExecuteCommandParams(
+            "java/findAnnotatedClasses", List.of("MySearchableAnnotation", Map.of("timeoutMillis", 60_000))))
+            .get(5, TimeUnit.SECONDS);
+        assertThat(completed.isPartial()).isFalse();
+        assertThat(completed.getLocations()).asList().hasSize(4);
+    }
+
+    @Test
+    @Timeout(10)
+    void testRemoteServerAnswersOverBothTransports() throws Exception {
+        for (Transport transport : Transport.values()) {
+            SnowdropLS remoteLS = LSUtils.launchServer(ExecutionMode.POOL, transport);
+            try {
+                LSUtils.initializeLanguageServer(remoteLS.getRemoteServer(), tempDir);
+                Object result = remoteLS.getRemoteServer().getWorkspaceService()
+                    .executeCommand(new ExecuteCommandParams("java/findAnnotatedClasses",
+                        Collections.singletonList("MySearchableAnnotation")))
+                    .get(5, TimeUnit.SECONDS);
+
+                // The result went through JSON-RPC, so it is decoded as generic maps and lists
+                Gson gson = new Gson();
+                List<Location> locations = gson.fromJson(gson.toJson(result),
+                    new TypeToken<List<Location>>() {}.getType());
+                assertThat(locations).as("Results over %s", transport).hasSize(4);
+            } finally {
+                remoteLS.shutdown();
+            }
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testMetricsCommandReportsTheMessagesOfTheServer() throws Exception {
+        LanguageServer remoteServer = snowdropLS.getRemoteServer();
+        LSUtils.initializeLanguageServer(remoteServer, tempDir);
+        ExecuteCommandParams search = new ExecuteCommandParams("java/findAnnotatedClasses",
+            Collections.singletonList("MySearchableAnnotation"));
+        for (int i = 0; i < 5; i++) {
+            remoteServer.getWorkspaceService().executeCommand(search).get(5, TimeUnit.SECONDS);
+        }
+
+        Object result = remoteServer.getWorkspaceService()
+            .executeCommand(new ExecuteCommandParams(JavaWorkspaceService.METRICS_COMMAND, List.of()))
+            .get(5, TimeUnit.SECONDS);
+        Gson gson = new Gson();
+        Map<String, MessageMetrics.MethodStats> metrics = gson.fromJson(gson.toJson(result),
+            new TypeToken<Map<String, MessageMetrics.MethodStats>>() {}.getType());
+
+        MessageMetrics.MethodStats initialize = metrics.get("initialize");
+        assertThat(initialize.getRequests()).isEqualTo(1);
+        assertThat(initialize.getInFlight()).isZero();
+        assertThat(metrics.get("initialized").getNotifications()).isEqualTo(1);
+
+        // The metrics request itself is still in flight when the snapshot is taken
+        MessageMetrics.MethodStats executeCommand = metrics.get("workspace/executeCommand");
+        assertThat(executeCommand.getRequests()).isEqualTo(6);
+        assertThat(executeCommand.getInFlight()).isEqualTo(1);
+        assertThat(executeCommand.getErrors()).isZero();
+        assertThat(executeCommand.getPayloadIn()).isPositive();
+        assertThat(executeCommand.getPayloadOut()).isPositive();
+        assertThat(executeCommand.getP50Micros()).isPositive().isLessThanOrEqualTo(executeCommand.getP999Micros());
+        assertThat(executeCommand.getP999Micros()).isLessThanOrEqualTo(executeCommand.getMaxMicros());
+    }
+
+    @Test
+    @Timeout(10)
+    void testCommandResultsAreDecodedToSymbols() throws Exception {
+        JsonElement remoteResult = JsonParser.parseString("""
+            [
+              "file:///project/",
+              {"name": "MySearchableAnnotation", "kind": 11, "location": {"uri": "file:///project/A.java",
+                "range": {"start": {"line": 2, "character": 4}, "end": {"line": 2, "character": 26}}}}
+            ]
+            """);
+        List<Object> localResult = List.of(Map.of("name", "MySearchableAnnotation", "kind", 11.0,
+            "location", Map.of("uri", "file:///project/A.java",
+                "range", Map.of("start", Map.of("line", 2, "character", 4), "end", Map.of("line", 2, "character", 26)))));
+
+        // A launcher answers a JSON tree and a local call answers lists and maps, decoded alike
+        List<SymbolInformation> remoteSymbols = LsSearchService.decodeSymbols(remoteResult);
+        assertThat(remoteSymbols).singleElement().satisfies(symbol -> {
+            assertThat(symbol.getName()).isEqualTo("MySearchableAnnotation");
+            assertThat(symbol.getKind()).isEqualTo(SymbolKind.Interface);
+            assertThat(symbol.getLocation().getRange().getStart()).isEqualTo(new Position(2, 4));
+        });
+        assertThat(LsSearchService.decodeSymbols(localResult)).isEqualTo(remoteSymbols);
+        assertThat(LsSearchService.decodeSymbolInfos(remoteResult))
+            .extracting(LSPSymbolInfo::getFileUri)
+            .containsExactly("file:///project/A.java");
+    }
+
+    @Test
+    @Timeout(10)
+    void testSearchServiceSurvivesFailingAndSynchronousServers() throws Exception {
+        // A server failing its first command synchronously, holding the second and answering the others at once
+        AtomicInteger commandCount = new AtomicInteger();
+        CompletableFuture<Object> heldCommand = new CompletableFuture<>();
+        JavaWorkspaceService workspaceService = new JavaWorkspaceService() {
+            @Override
+            public CompletableFuture<Object> executeCommand(ExecuteCommandParams params) {
+                int count = commandCount.incrementAndGet();
+                if (count == 1) {
+                    throw new IllegalStateException("Connection closed");
+                }
+                return count == 2 ? heldCommand : CompletableFuture.completedFuture(null);
+            }
+        };
+        SnowdropLanguageServer server = new SnowdropLanguageServer(1) {
+            @Override
+            public WorkspaceService getWorkspaceService() {
+                return workspaceService;
+            }
+        };
+        LsSearchService searchService = new LsSearchService(server, 1);
+
+        // The failure completes the command and frees its slot
+        assertThatThrownBy(() -> searchService.executeCommand("java/findAnnotatedClasses", List.of("A")).get(5, TimeUnit.SECONDS))
+            .hasRootCauseMessage("Connection closed");
+        assertThat(searchService.getInFlight()).isZero();
+
+        // The queued commands answered synchronously are sent one after the other, not from nested callbacks
+        CompletableFuture<List<SymbolInformation>> held = searchService.executeCommand("java/findAnnotatedClasses", List.of("A"));
+        List<CompletableFuture<List<SymbolInformation>>> queued = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            queued.add(searchService.executeCommand("java/findAnnotatedClasses", List.of("A")));
+        }
+        heldCommand.complete(null);
+
+        assertThat(held.get(5, TimeUnit.SECONDS)).isEmpty();
+        assertThat(queued).allMatch(future -> future.isDone() && !future.isCompletedExceptionally());
+        assertThat(searchService.getInFlight()).isZero();
+        assertThat(searchService.getPending()).isZero();
+    }
+
+    @Test
+    @Timeout(10)
+    void testSearchServiceCapsTheRequestsInFlight() throws Exception {
+        // A server holding the answers of its commands until the test completes them
+        List<CompletableFuture<Object>> sentCommands = new CopyOnWriteArrayList<>();
+        JavaWorkspaceService workspaceService = new JavaWorkspaceService() {
+            @Override
+            public CompletableFuture<Object> executeCommand(ExecuteCommandParams params) {
+                CompletableFuture<Object> answer = new CompletableFuture<>();
+                sentCommands.add(answer);
+                return answer;
+            }
+        };
+        SnowdropLanguageServer server = new SnowdropLanguageServer(1) {
+            @Override
+            public WorkspaceService getWorkspaceService() {
+                return workspaceService;
+            }
+        };
+        LsSearchService searchService = new LsSearchService(server, 2);
+
+        List<CompletableFuture<List<SymbolInformation>>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(searchService.executeCommand("java/findAnnotatedClasses", List.of("MySearchableAnnotation")));
+        }
+        assertThat(sentCommands).hasSize(2);
+        assertThat(searchService.getPending()).isEqualTo(2);
+
+        // A queued command cancelled by its caller leaves the queue and is never sent
+        results.get(2).cancel(true);
+        assertThat(searchService.getPending()).isEqualTo(1);
+        Map<String, Object> symbol = Map.of("name", "MySearchableAnnotation", "kind", 11,
+            "location", Map.of("uri", "file:///project/A.java",
+                "range", Map.of("start", Map.of("line", 0, "character", 0), "end", Map.of("line", 0, "character", 1))));
+        sentCommands.get(0).complete(List.of(symbol));
+        assertThat(sentCommands).hasSize(3);
+        assertThat(results.get(0).get(5, TimeUnit.SECONDS)).extracting(SymbolInformation::getName)
+            .containsExactly("MySearchableAnnotation");
+
+        sentCommands.get(1).complete(null);
+        sentCommands.get(2).complete(List.of());
+        assertThat(results.get(1).get(5, TimeUnit.SECONDS)).isEmpty();
+        assertThat(results.get(3).get(5, TimeUnit.SECONDS)).isEmpty();
+        assertThat(searchService.getInFlight()).isZero();
+    }
+
+    @Test
+    @Timeout(10)
+    void testRuleBatchAggregatesTheQueriesPerRule() throws Exception {
+        Path rulesFile = tempDir.resolve("rules.json");
+        Files.writeString(rulesFile, """
+            [
+              {"ruleId": "rule-1", "query": "dev.snowdrop.MySearchableAnnotation", "location": "4", "analysisMode": "source-only"},
+              {"ruleId": "rule-2", "query": "java.rmi*", "location": "8", "analysisMode": "source-only"},
+              {"ruleId": "rule-1", "query": "dev.snowdrop.ImportantAnnotation", "location": "4", "analysisMode": "source-only"}
+            ]
+            """);
+        List<RuleQuery> queries = RuleBatchRunner.loadQueries(rulesFile);
+        assertThat(queries).extracting(query -> query.getParams().get("project")).containsOnly("java");
+
+        // A server answering a symbol named after the query, failing the queries of imports
+        List<CompletableFuture<Object>> sentCommands = new CopyOnWriteArrayList<>();
+        JavaWorkspaceService workspaceService = new JavaWorkspaceService() {
+            @Override
+            public CompletableFuture<Object> executeCommand(ExecuteCommandParams params) {
+                Map<?, ?> query = (Map<?, ?>) params.getArguments().get(0);
+                CompletableFuture<Object> answer = new CompletableFuture<>();
+                sentCommands.add(answer);
+                if ("8".equals(query.get("location"))) {
+                    answer.completeExceptionally(new IllegalStateException("Unsupported location"));
+                } else {
+                    answer.complete(List.of(Map.of("name", query.get("query"), "kind", 11,
+                        "location", Map.of("uri", "file:///project/A.java",
+                            "range", Map.of("start", Map.of("line", 0, "character", 0), "end", Map.of("line", 0, "character", 1))))));
+                }
+                return answer;
+            }
+        };
+        SnowdropLanguageServer server = new SnowdropLanguageServer(1) {
+            @Override
+            public WorkspaceService getWorkspaceService() {
+                return workspaceService;
+            }
+        };
+
+        Map<String, RuleResult> results = new RuleBatchRunner(new LsSearchService(server, 2)).run(queries)
+            .get(5, TimeUnit.SECONDS);
+
+        assertThat(sentCommands).hasSize(3);
+        assertThat(results).containsOnlyKeys("rule-1", "rule-2");
+        assertThat(results.get("rule-1").getQueryCount()).isEqualTo(2);
+        assertThat(results.get("rule-1").getSymbols()).extracting(SymbolInformation::getName)
+            .containsExactlyInAnyOrder("dev.snowdrop.MySearchableAnnotation", "dev.snowdrop.ImportantAnnotation");
+        assertThat(results.get("rule-2").getSymbols()).isEmpty();
+        assertThat(results.get("rule-2").getErrors()).singleElement().asString().contains("Unsupported location");
+
+        // A query the server could not read fails the batch before anything is sent
+        Files.writeString(rulesFile, """
+            [{"ruleId": "rule-3", "query": "dev.snowdrop.MySearchableAnnotation"}]
+            """);
+        assertThatThrownBy(() -> RuleBatchRunner.loadQueries(rulesFile))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("rule-3");
+    }
+
+    @Test
+    @Timeout(20)
+    void testServerPoolLeasesAndRecyclesInstances() throws Exception {
+        // In-process servers stand for the jdt-ls processes, started and initialized by the pool
+        List<SnowdropLS> started = new CopyOnWriteArrayList<>();
+        JdtlsPool.InstanceFactory factory = slot -> {
+            SnowdropLS ls = LSUtils.launchServer();
+            LSUtils.initializeLanguageServer(ls.getRemoteServer(), tempDir);
+            started.add(ls);
+            return new JdtlsInstance(slot, ls.getRemoteServer(), null, ls::shutdown);
+        };
+
+        try (JdtlsPool pool = new JdtlsPool(new JdtlsPoolOptions().setSize(1).setMaxUses(2), factory)) {
+            pool.start().get(10, TimeUnit.SECONDS);
+            assertThat(pool.getIdleCount()).isEqualTo(1);
+
+            JdtlsInstance first;
+            try (JdtlsPool.Lease lease = pool.lease(5, TimeUnit.SECONDS)) {
+                first = lease.getInstance();
+                Object result = lease.getServer().getWorkspaceService().executeCommand(new ExecuteCommandParams(
+                    "java/findAnnotatedClasses", List.of("MySearchableAnnotation"))).get(5, TimeUnit.SECONDS);
+                assertThat(result).asList().hasSize(4);
+                // Jobs wait for a leased instance to be released
+                assertThatThrownBy(() -> pool.lease(100, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+            }
+
+            // The second job of the instance recycles it, the next job getting its replacement
+            try (JdtlsPool.Lease lease = pool.lease(5, TimeUnit.SECONDS)) {
+                assertThat(lease.getInstance()).isSameAs(first);
+            }
+            try (JdtlsPool.Lease lease = pool.lease(10, TimeUnit.SECONDS)) {
+                assertThat(lease.getInstance()).isNotSameAs(first);
+                assertThat(lease.getInstance().getUseCount()).isEqualTo(1);
+            }
+            assertThat(started).hasSize(2);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testServerPoolRetriesThenGivesUpSlotsFailingToStart() throws Exception {
+        // The first instance starts, then the process of the slot can no longer be started
+        AtomicInteger startAttempts = new AtomicInteger();
+        JdtlsPool.InstanceFactory factory = slot -> {
+            if (startAttempts.incrementAndGet() > 1) {
+                throw new IOException("Cannot run the jdt ls launcher");
+            }
+            SnowdropLS ls = LSUtils.launchServer();
+            LSUtils.initializeLanguageServer(ls.getRemoteServer(), tempDir);
+            return new JdtlsInstance(slot, ls.getRemoteServer(), null, ls::shutdown);
+        };
+
+        JdtlsPoolOptions options = new JdtlsPoolOptions().setSize(1).setMaxUses(1).setMaxStartAttempts(3).setStartRetryDelayMillis(10);
+        try (JdtlsPool pool = new JdtlsPool(options, factory)) {
+            pool.start().get(5, TimeUnit.SECONDS);
+            pool.lease(5, TimeUnit.SECONDS).close();
+
+            // The replacement of the recycled instance fails every attempt: the next job fails with its cause
+            // rather than waiting for its timeout
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> pool.lease(1, TimeUnit.MINUTES))
+                .isInstanceOf(IllegalStateException.class)
+                .hasRootCauseMessage("Cannot run the jdt ls launcher");
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+            assertThat(startAttempts).hasValue(4);
+            assertThat(pool.getFailedSlots()).containsOnlyKeys(0);
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void testClientIsReadyOnceTheServerEndedItsWork() throws Exception {
+        LSClient client = new LSClient(200);
+        WorkDoneProgressBegin building = new WorkDoneProgressBegin();
+        building.setTitle("Building");
+        client.notifyProgress(new ProgressParams(Either.forLeft("build"), Either.forLeft(building)));
+        client.languageStatus(new StatusReport("Starting", "Init..."));
+        client.languageStatus(new StatusReport(LSClient.SERVICE_READY, "ServiceReady"));
+
+        // The project is imported, but still being built
+        assertThat(client.whenReady()).isNotDone();
+
+        // The indexing begins right after the build ends, within the settle window
+        client.notifyProgress(new ProgressParams(Either.forLeft("build"), Either.forLeft(new WorkDoneProgressEnd())));
+        client.notifyProgress(new ProgressParams(Either.forLeft("index"), Either.forLeft(building)));
+        Thread.sleep(400);
+        assertThat(client.whenReady()).isNotDone();
+
+        long idleAt = System.nanoTime();
+        client.notifyProgress(new ProgressParams(Either.forLeft("index"), Either.forLeft(new WorkDoneProgressEnd())));
+        client.whenReady().get(5, TimeUnit.SECONDS);
+        assertThat(System.nanoTime() - idleAt).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+
+        // A server never reported ready is waited for until the fallback timeout only
+        LSClient silentClient = new LSClient();
+        silentClient.whenReady(100).get(5, TimeUnit.SECONDS);
+        assertThat(silentClient.whenReady()).isNotDone();
+
+        // The workspace folder of a project is the same from one run to the next, and differs between projects
+        Path dataRoot = tempDir.resolve(".jdt_workspaces");
+        Path dataDir = JdtlsProcessFactory.projectDataDir(dataRoot, tempDir);
+        assertThat(dataDir.getParent()).isEqualTo(dataRoot);
+        assertThat(dataDir.getFileName().toString()).startsWith(tempDir.getFileName() + "-");
+        assertThat(JdtlsProcessFactory.projectDataDir(dataRoot, tempDir.resolve("."))).isEqualTo(dataDir);
+        assertThat(JdtlsProcessFactory.projectDataDir(dataRoot, tempDir.resolveSibling("other"))).isNotEqualTo(dataDir);
+    }
+
+    @Test
+    @Timeout(10)
+    void testWorkspaceSymbolFindsAnnotationDeclaration() throws Exception {
+        Optional<SymbolInformation> annotation = LsSearchService
+            .searchWksSymbol("MySearchableAnnotation", snowdropLS.getServer())
+            .get(5, TimeUnit.SECONDS);
+
+        assertThat(annotation).isPresent();
+        assertThat(getFileName(annotation.get().getLocation().getUri())).isEqualTo("MySearchableAnnotation.java");
+
+        // Camel-case queries rank the exact hump match first
+        List<? extends SymbolInformation> symbols = snowdropLS.getServer().getWorkspaceService()
+            .symbol(new WorkspaceSymbolParams("MSA"))
+            .get(5, TimeUnit.SECONDS)
+            .getLeft();
+        assertThat(symbols).extracting(SymbolInformation::getName).first().isEqualTo("MySearchableAnnotation");
+
+        // Members are reported with their enclosing type
+        symbols = snowdropLS.getServer().getWorkspaceService()
+            .symbol(new WorkspaceSymbolParams("annotated"))
+            .get(5, TimeUnit.SECONDS)
+            .getLeft();
+        assertThat(symbols)
+            .extracting(SymbolInformation::getName, SymbolInformation::getKind, SymbolInformation::getContainerName)
+            .containsExactly(
+                tuple("annotatedField", SymbolKind.Field, "ComplexAnnotatedClass"),
+                tuple("annotatedMethod", SymbolKind.Method, "ComplexAnnotatedClass"));
+    }
+
+    @Test
+    void testDocumentEditsClampBeforeCrlfAndIgnoreNonFileDocuments() throws Exception {
+        TextDocument document = new TextDocument("file:///Crlf.java", 1, "class A {\r\n}\r\n");
+        // A position past the end of a line is clamped before its \r\n
+        document.applyChanges(2, List.of(
+            new TextDocumentContentChangeEvent(new Range(new Position(0, 100), new Position(0, 100)), " int a;")));
+        assertThat(new String(document.getContent())).isEqualTo("class A { int a;\r\n}\r\n");
+
+        // Typing then deleting many times keeps the positions of the lines after the edits right
+        for (int i = 0; i < 1000; i++) {
+            document.applyChanges(3 + 2 * i, List.of(
+                new TextDocumentContentChangeEvent(new Range(new Position(1, 0), new Position(1, 0)), "x\r\n")));
+            document.applyChanges(4 + 2 * i, List.of(
+                new TextDocumentContentChangeEvent(new Range(new Position(1, 0), new Position(2, 0)), "")));
+        }
+        document.applyChanges(3000, List.of(
+            new TextDocumentContentChangeEvent(new Range(new Position(1, 1), new Position(1, 5)), "// end")));
+        assertThat(new String(document.getContent())).isEqualTo("class A { int a;\r\n}// end\r\n");
+
+        // Documents which are not files are not part of the workspace
+        DocumentStore store = new DocumentStore();
+        store.open("untitled:Untitled-1", 1, "class Untitled {}");
+        store.change("untitled:Untitled-1", 2, List.of(new TextDocumentContentChangeEvent("class Renamed {}")));
+        assertThat(store.get("untitled:Untitled-1")).isNull();
+        store.close("untitled:Untitled-1");
+        assertThat(store.drainChangedFiles()).isEmpty();
+
+        List<Either<SymbolInformation, DocumentSymbol>> symbols = snowdropLS.getServer().getTextDocumentService()
+            .documentSymbol(new DocumentSymbolParams(new TextDocumentIdentifier("jdt://contents/rt.jar/java.lang/String.class")))
+            .get(5, TimeUnit.SECONDS);
+        assertThat(symbols).isEmpty();
+    }
+
+    @Test
+    @Timeout(10)
+    void testDocumentSymbolFollowsOpenDocumentVersions() throws Exception {
+        Path simpleClassFile = tempDir.resolve("SimpleClass.java");
+        String uri = simpleClassFile.toUri().toString();
+        var textDocumentService = snowdropLS.getServer().getTextDocumentService();
+        textDocumentService.didOpen(new DidOpenTextDocumentParams(
+            new TextDocumentItem(uri, "java", 1, Files.readString(simpleClassFile))));
+
+        DocumentSymbolParams symbolParams = new DocumentSymbolParams(new TextDocumentIdentifier(uri));
+        List<Either<SymbolInformation, DocumentSymbol>> symbols = textDocumentService.documentSymbol(symbolParams).get(5, TimeUnit.SECONDS);
+
+        assertThat(symbols).hasSize(1);
+        DocumentSymbol simpleClass = symbols.get(0).getRight();
+        assertThat(simpleClass.getName()).isEqualTo("SimpleClass");
+        assertThat(simpleClass.getKind()).isEqualTo(SymbolKind.Class);
+        assertThat(simpleClass.getChildren())
+            .extracting(DocumentSymbol::getName, DocumentSymbol::getKind, DocumentSymbol::getDetail)
+            .containsExactly(
+                tuple("toString", SymbolKind.Method, "() : String"),
+                tuple("simpleField", SymbolKind.Field, "String"));
+        // The selection range is the name, within the range of the whole declaration
+        assertThat(simpleClass.getChildren().get(1).getSelectionRange().getStart()).isEqualTo(new Position(7, 19));
+        assertThat(simpleClass.getChildren().get(1).getRange().getStart()).isEqualTo(new Position(6, 4));
+
+        // Rename the field in the buffer: the next request sees the new version
+        textDocumentService.didChange(new DidChangeTextDocumentParams(
+            new VersionedTextDocumentIdentifier(uri, 2),
+            List.of(new TextDocumentContentChangeEvent(new Range(new Position(7, 19), new Position(7, 25)), "renamed"))));
+        symbols = textDocumentService.documentSymbol(symbolParams).get(5, TimeUnit.SECONDS);
+
+        assertThat(symbols.get(0).getRight().getChildren())
+            .extracting(DocumentSymbol::getName)
+            .containsExactly("toString", "renamedField");
+    }
+
+    @Test
+    @Timeout(10)
+    void testDocumentSymbolRangesEndingTheFile() throws Exception {
+        Path file = tempDir.resolve("A.java");
+        String uri = file.toUri().toString();
+        var textDocumentService = snowdropLS.getServer().getTextDocumentService();
+        // No trailing newline: the class ends with the last character of the file
+        textDocumentService.didOpen(new DidOpenTextDocumentParams(
+            new TextDocumentItem(uri, "java", 1, "class A { int f; }")));
+
+        List<Either<SymbolInformation, DocumentSymbol>> symbols = textDocumentService
+            .documentSymbol(new DocumentSymbolParams(new TextDocumentIdentifier(uri))).get(5, TimeUnit.SECONDS);
+
+        DocumentSymbol type = symbols.get(0).getRight();
+        assertThat(type.getRange()).isEqualTo(new Range(new Position(0, 0), new Position(0, 18)));
+        assertThat(type.getSelectionRange()).isEqualTo(new Range(new Position(0, 6), new Position(0, 7)));
+        assertThat(type.getChildren()).singleElement()
+            .extracting(DocumentSymbol::getRange)
+            .isEqualTo(new Range(new Position(0, 10), new Position(0, 16)));
+    }
+
     @Test
     @Timeout(10)
     void testServerCapabilities() throws Exception {